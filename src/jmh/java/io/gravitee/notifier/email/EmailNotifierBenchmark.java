@@ -0,0 +1,147 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email;
+
+import io.gravitee.notifier.email.configuration.EmailNotifierConfiguration;
+import io.vertx.ext.mail.MailConfig;
+import io.vertx.ext.mail.MailMessage;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Throughput of the preparation of an email, from the rendering of the templates to the inlining of the images, for
+ * the kinds of bodies met in production. Allocations are reported by the <code>gc</code> profiler enabled by default in
+ * the <code>benchmark</code> profile.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailNotifierBenchmark {
+
+    private static final String STATUS = "<div>The API ${api.name} is ${status}.</div>";
+
+    @Param({ "plain-text", "file-images", "data-uri-images", "large-template" })
+    public String body;
+
+    private Path templates;
+
+    private EmailNotifier emailNotifier;
+
+    private Map<String, Object> parameters;
+
+    private String html;
+
+    @Setup
+    public void setUp() throws Exception {
+        templates = Files.createTempDirectory("email-benchmark");
+        Files.createDirectories(templates.resolve("images"));
+        Files.write(templates.resolve("images/logo.png"), image(4 * 1024));
+        Files.write(templates.resolve("images/footer.png"), image(16 * 1024));
+
+        final EmailNotifierConfiguration configuration = new EmailNotifierConfiguration();
+        configuration.setHost("localhost");
+        configuration.setPort(2525);
+        configuration.setUsername("user");
+        configuration.setPassword("password");
+        configuration.setFrom("${from}");
+        configuration.setTo("${owner.email},${primaryOwner.email}");
+        configuration.setSubject("[Gravitee.io] ${api.name} is ${status}");
+        configuration.setBody(body(body));
+
+        emailNotifier = new EmailNotifier(configuration);
+        emailNotifier.setTemplatesPath(templates.toString());
+        emailNotifier.afterPropertiesSet();
+
+        parameters = parameters();
+        html = emailNotifier.getTemplateCache().render(configuration.getBody().replace("\n", "<br>"), parameters);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        emailNotifier.destroy();
+        try (var files = Files.walk(templates)) {
+            files.sorted((a, b) -> b.compareTo(a)).forEach(file -> file.toFile().delete());
+        }
+    }
+
+    @Benchmark
+    public MailMessage prepareMailMessage() throws Exception {
+        return emailNotifier.prepareMailMessage(parameters);
+    }
+
+    @Benchmark
+    public MailMessage addContentInMessage() throws Exception {
+        final MailMessage mailMessage = new MailMessage();
+        emailNotifier.addContentInMessage(mailMessage, html);
+        return mailMessage;
+    }
+
+    @Benchmark
+    public MailConfig prepareMailConfig() {
+        return emailNotifier.prepareMailConfig();
+    }
+
+    static String body(final String kind) {
+        final String dataUri = "data:image/png;base64," + Base64.getEncoder().encodeToString(image(4 * 1024));
+        return switch (kind) {
+            case "plain-text" -> "The API ${api.name} is ${status}.\nPlease check the health of its endpoints.";
+            case "file-images" -> "<img src=\"images/logo.png\" />\n" + STATUS + "\n<img src=\"images/footer.png\" />";
+            case "data-uri-images" -> "<img src=\"" + dataUri + "\" />\n" + STATUS + "\n<img src=\"" + dataUri + "\" />";
+            case "large-template" -> "<img src=\"images/logo.png\" />\n<h1>${api.name} is ${status}</h1>\n<table>\n" +
+            "<#list endpoints as endpoint>" +
+            "<tr><td>${endpoint.name}</td><td>${endpoint.target}</td><td>${endpoint.status}</td>" +
+            "<td><a href=\"https://apim.example.com/apis/${api.id}/endpoints/${endpoint.name}\">details</a></td></tr>" +
+            "</#list>\n</table>\n<img src=\"images/footer.png\" />";
+            default -> throw new IllegalArgumentException("Unknown body " + kind);
+        };
+    }
+
+    static Map<String, Object> parameters() {
+        final List<Map<String, Object>> endpoints = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            endpoints.add(Map.of("name", "endpoint-" + i, "target", "https://backend-" + i + ".example.com/api", "status", "DOWN"));
+        }
+
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("from", "noreply@example.com");
+        parameters.put("owner", Map.of("email", "owner@example.com"));
+        parameters.put("primaryOwner", Map.of("email", "primary-owner@example.com"));
+        parameters.put("api", Map.of("id", "9f1c2d", "name", "Echo API"));
+        parameters.put("status", "DOWN");
+        parameters.put("endpoints", endpoints);
+        return parameters;
+    }
+
+    private static byte[] image(final int size) {
+        final byte[] image = new byte[size];
+        for (int i = 0; i < size; i++) {
+            image[i] = (byte) (i * 31);
+        }
+        return image;
+    }
+}
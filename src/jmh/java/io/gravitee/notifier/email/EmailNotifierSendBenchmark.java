@@ -0,0 +1,116 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.util.GreenMail;
+import com.icegreen.greenmail.util.ServerSetup;
+import io.gravitee.notifier.api.Notification;
+import io.gravitee.notifier.email.configuration.EmailNotifierConfiguration;
+import io.vertx.core.Vertx;
+import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * End to end throughput of the notifier, sending emails to an in-process SMTP server over the loopback interface.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class EmailNotifierSendBenchmark {
+
+    @Param({ "plain-text", "large-template" })
+    public String body;
+
+    private GreenMail smtpServer;
+
+    private Path templates;
+
+    private Vertx vertx;
+
+    private EmailNotifier emailNotifier;
+
+    private final Notification notification = new Notification();
+
+    private Map<String, Object> parameters;
+
+    @Setup
+    public void setUp() throws Exception {
+        final int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        smtpServer = new GreenMail(new ServerSetup(port, "127.0.0.1", ServerSetup.PROTOCOL_SMTP));
+        smtpServer.withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication());
+        smtpServer.start();
+
+        final EmailNotifierConfiguration configuration = new EmailNotifierConfiguration();
+        configuration.setHost("127.0.0.1");
+        configuration.setPort(port);
+        configuration.setFrom("${from}");
+        configuration.setTo("${owner.email}");
+        configuration.setSubject("[Gravitee.io] ${api.name} is ${status}");
+        configuration.setBody(EmailNotifierBenchmark.body(body).replaceAll("<img [^>]*>", ""));
+
+        notification.setType(EmailNotifier.TYPE);
+        templates = Files.createTempDirectory("email-benchmark");
+        emailNotifier = new EmailNotifier(configuration);
+        emailNotifier.setTemplatesPath(templates.toString());
+        emailNotifier.afterPropertiesSet();
+        parameters = EmailNotifierBenchmark.parameters();
+        vertx = Vertx.vertx();
+    }
+
+    @TearDown(Level.Iteration)
+    public void purge() throws Exception {
+        smtpServer.purgeEmailFromAllMailboxes();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        emailNotifier.destroy();
+        vertx.close().await();
+        smtpServer.stop();
+        Files.deleteIfExists(templates);
+    }
+
+    @Benchmark
+    public Void send() {
+        final CompletableFuture<Void> sent = new CompletableFuture<>();
+        vertx.runOnContext(event ->
+            emailNotifier
+                .send(notification, parameters)
+                .whenComplete((result, throwable) -> {
+                    if (throwable != null) {
+                        sent.completeExceptionally(throwable);
+                    } else {
+                        sent.complete(result);
+                    }
+                })
+        );
+        return sent.join();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.address;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the single pass recipient parsing, cached or not, with the regex based split it replaces. Run with the
+ * <code>gc</code> profiler to compare allocations.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RecipientsBenchmark {
+
+    @Param({ "1", "10", "100" })
+    public int count;
+
+    private String to;
+
+    private final Recipients recipients = new Recipients(16);
+
+    @Setup
+    public void setUp() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            builder.append("api-owner-").append(i).append("@example.com").append(i % 2 == 0 ? ", " : ";");
+        }
+        to = builder.toString();
+    }
+
+    @Benchmark
+    public List<String> split() {
+        return Arrays.stream(to.split(",|;|\\s")).toList();
+    }
+
+    @Benchmark
+    public Recipients.Result scan() {
+        return Recipients.scan(to);
+    }
+
+    @Benchmark
+    public Recipients.Result cached() {
+        return recipients.parse(to);
+    }
+}
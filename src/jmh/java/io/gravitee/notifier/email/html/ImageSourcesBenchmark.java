@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.html;
+
+import java.util.concurrent.TimeUnit;
+import org.jsoup.Jsoup;
+import org.jsoup.nodes.Document;
+import org.jsoup.nodes.Element;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the single pass image source rewriting with the Jsoup based one it replaces.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ImageSourcesBenchmark {
+
+    @Param({ "0", "10", "1000" })
+    public int rows;
+
+    private String html;
+
+    @Setup
+    public void setUp() {
+        final StringBuilder builder = new StringBuilder("<img src=\"images/logo.png\" /><table>");
+        for (int i = 0; i < rows; i++) {
+            builder
+                .append("<tr><td>API ")
+                .append(i)
+                .append("</td><td>Down</td><td><a href=\"https://apim/apis/")
+                .append(i)
+                .append("\">details</a></td></tr>");
+        }
+        html = builder.append("</table><img src=\"images/footer.png\" />").toString();
+    }
+
+    @Benchmark
+    public String jsoup() {
+        final Document document = Jsoup.parse(html);
+        for (Element image : document.getElementsByTag("img")) {
+            if (image.hasAttr("src") && !image.attr("src").startsWith("http")) {
+                image.attr("src", "cid:" + image.attr("src"));
+            }
+        }
+        return document.html();
+    }
+
+    @Benchmark
+    public String streaming() throws Exception {
+        return ImageSources.rewrite(html, src -> src.startsWith("http") ? null : "cid:" + src);
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.resource;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Compares the data URI scanner with the regex based parsing it replaces, and measures the cost of a cache hit. Run
+ * with the <code>gc</code> profiler to compare allocations.
+ *
+ * @author GraviteeSource Team
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DataUriCacheBenchmark {
+
+    @Param({ "256", "65536" })
+    public int size;
+
+    private String dataUri;
+
+    private String digest;
+
+    private final DataUriCache cache = new DataUriCache(1024 * 1024);
+
+    @Setup
+    public void setUp() {
+        dataUri = "data:image/png;base64," + Base64.getEncoder().encodeToString(new byte[size]);
+        digest = DataUriCache.digest(dataUri);
+        cache.get(dataUri);
+    }
+
+    @Benchmark
+    public byte[] regex() {
+        final Matcher matcher = Pattern.compile("^data:([a-zA-Z0-9]+/[a-zA-Z0-9]+).*,.*").matcher(dataUri);
+        final String contentType = matcher.find() ? matcher.group(1).toLowerCase() : "";
+        final String value = dataUri.replaceFirst("^data:image/[^;]*;base64,?", "");
+        return contentType.isEmpty() ? null : Base64.getDecoder().decode(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Benchmark
+    public DataUriCache.Image scanner() {
+        return DataUriCache.decode(dataUri, digest);
+    }
+
+    @Benchmark
+    public DataUriCache.Image cached() {
+        return cache.get(dataUri);
+    }
+}
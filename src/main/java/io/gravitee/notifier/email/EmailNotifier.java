@@ -17,35 +17,71 @@ package io.gravitee.notifier.email;
 
 import static io.vertx.core.buffer.Buffer.buffer;
 import static java.lang.String.valueOf;
-import static java.nio.file.Files.readAllBytes;
 import static java.util.Objects.nonNull;
 import static java.util.stream.Collectors.joining;
-import static java.util.stream.Collectors.toList;
 
 import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.MruCacheStorage;
 import freemarker.core.TemplateClassResolver;
 import freemarker.template.Configuration;
+import freemarker.template.Template;
 import io.gravitee.common.utils.UUID;
 import io.gravitee.notifier.api.AbstractConfigurableNotifier;
 import io.gravitee.notifier.api.Notification;
+import io.gravitee.notifier.email.address.Recipients;
+import io.gravitee.notifier.email.client.MailBatcher;
+import io.gravitee.notifier.email.client.MailClientRegistry;
+import io.gravitee.notifier.email.client.MailSender;
 import io.gravitee.notifier.email.configuration.EmailNotifierConfiguration;
+import io.gravitee.notifier.email.configuration.NotificationPriority;
+import io.gravitee.notifier.email.configuration.RelayStrategy;
+import io.gravitee.notifier.email.digest.DigestAggregator;
+import io.gravitee.notifier.email.execution.RenderExecutor;
+import io.gravitee.notifier.email.html.ImageSources;
+import io.gravitee.notifier.email.metrics.EmailNotifierMetrics;
+import io.gravitee.notifier.email.metrics.SmtpReplyCodes;
+import io.gravitee.notifier.email.outbox.MailOutbox;
+import io.gravitee.notifier.email.relay.RelayHealth;
+import io.gravitee.notifier.email.relay.RelayRouter;
+import io.gravitee.notifier.email.resource.DataUriCache;
+import io.gravitee.notifier.email.resource.FileAttachmentStream;
+import io.gravitee.notifier.email.resource.ResourceCache;
+import io.gravitee.notifier.email.stream.NotificationStream;
+import io.gravitee.notifier.email.suppression.Fingerprints;
+import io.gravitee.notifier.email.suppression.SuppressionStore;
+import io.gravitee.notifier.email.template.BodyTemplate;
+import io.gravitee.notifier.email.template.PooledWriter;
+import io.gravitee.notifier.email.template.TemplateCache;
+import io.gravitee.notifier.email.template.TemplateDirectory;
+import io.gravitee.notifier.email.throttling.SendLimiter;
+import io.vertx.core.Context;
 import io.vertx.core.Vertx;
+import io.vertx.core.net.JksOptions;
+import io.vertx.core.streams.ReadStream;
 import io.vertx.ext.mail.*;
 import io.vertx.ext.mail.impl.MailAttachmentImpl;
-import jakarta.activation.MimetypesFileTypeMap;
 import java.io.File;
 import java.io.IOException;
 import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.CompletableFuture;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.select.Elements;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 
 /**
@@ -53,57 +89,902 @@ import org.springframework.beans.factory.annotation.Value;
  * @author Azize ELAMRANI (azize.elamrani at graviteesource.com)
  * @author GraviteeSource Team
  */
-public class EmailNotifier extends AbstractConfigurableNotifier<EmailNotifierConfiguration> implements InitializingBean {
-
-    private static final String RECIPIENTS_SPLIT_REGEX = ",|;|\\s";
+public class EmailNotifier extends AbstractConfigurableNotifier<EmailNotifierConfiguration> implements InitializingBean, DisposableBean {
 
     static final String TYPE = "email-notifier";
 
+    private static final String WORKER_EXECUTION_MODE = "worker";
+
+    private static final String HOOK_PARAMETER = "hook";
+
+    private static final String DEFAULT_DIGEST_SUBJECT = "${notifications?size} notifications";
+
+    private static final Set<String> FINGERPRINT_COMPONENTS = Set.of("from", "recipients", "subject", "body", "hook");
+
+    private static final ScheduledExecutorService MAIL_CONFIG_REFRESHER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "gio-email-notifier-config-refresher");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @Value("${notifiers.email.templates.path:${gravitee.home}/templates}")
     private String templatesPath;
 
+    @Value("${notifiers.email.pool.maxSize:10}")
+    private int poolMaxSize = 10;
+
+    @Value("${notifiers.email.pool.keepAliveTimeout:300}")
+    private int poolKeepAliveTimeout = 300;
+
+    /**
+     * Send the commands of a message (MAIL FROM, RCPT TO, DATA) without waiting for each reply when the SMTP server
+     * advertises the PIPELINING extension, saving a round trip per recipient.
+     */
+    @Value("${notifiers.email.pipelining.enabled:true}")
+    private boolean pipeliningEnabled = true;
+
+    /**
+     * Time in milliseconds between two checks of the mail configuration and of the modification of the key store, made
+     * off the sending threads. 0 to resolve the configuration once.
+     */
+    @Value("${notifiers.email.mailConfig.refreshInterval:10000}")
+    private long mailConfigRefreshInterval = 10000;
+
+    @Value("${notifiers.email.templates.cacheSize:100}")
+    private int templatesCacheSize = 100;
+
+    /**
+     * Number of file templates strongly referenced by the FreeMarker cache, the least recently used ones being kept
+     * up to <code>softSize</code> as long as memory allows it.
+     */
+    @Value("${notifiers.email.templates.cache.strongSize:20}")
+    private int templatesCacheStrongSize = 20;
+
+    @Value("${notifiers.email.templates.cache.softSize:250}")
+    private int templatesCacheSoftSize = 250;
+
+    /**
+     * Minimum time in milliseconds between two checks of the modification of a cached file template. Ignored when the
+     * templates directory is watched.
+     */
+    @Value("${notifiers.email.templates.updateDelay:5000}")
+    private long templatesUpdateDelay = 5000;
+
+    /**
+     * Invalidate the cached file templates as soon as the templates directory notifies their modification, instead of
+     * checking their files. Ignored, with a warning, when the templates directory does not exist at startup.
+     */
+    @Value("${notifiers.email.templates.watch.enabled:false}")
+    private boolean templatesWatchEnabled = false;
+
+    /**
+     * Compile the file templates at startup, so that the first notifications do not pay for it. Opt-in since each
+     * notifier walks the templates directory and compiles them into its own configuration.
+     */
+    @Value("${notifiers.email.templates.warmup.enabled:false}")
+    private boolean templatesWarmupEnabled = false;
+
+    @Value("${notifiers.email.coalescing.enabled:false}")
+    private boolean coalescingEnabled = false;
+
+    /**
+     * Send coalesced messages to their recipients as blind carbon copies, so that unrelated recipients don't see each
+     * other. Merging them into the To header is opt-in.
+     */
+    @Value("${notifiers.email.coalescing.bcc:true}")
+    private boolean coalescingBcc = true;
+
+    @Value("${notifiers.email.coalescing.maxRecipients:50}")
+    private int coalescingMaxRecipients = 50;
+
+    @Value("${notifiers.email.outbox.enabled:false}")
+    private boolean outboxEnabled = false;
+
+    @Value("${notifiers.email.outbox.path:${gravitee.home}/data/email-outbox}")
+    private String outboxPath = "email-outbox";
+
+    @Value("${notifiers.email.outbox.capacity:67108864}")
+    private int outboxCapacity = 67108864;
+
+    @Value("${notifiers.email.outbox.maxAttempts:10}")
+    private int outboxMaxAttempts = 10;
+
+    @Value("${notifiers.email.outbox.initialBackoff:1000}")
+    private long outboxInitialBackoff = 1000;
+
+    @Value("${notifiers.email.outbox.maxBackoff:300000}")
+    private long outboxMaxBackoff = 300000;
+
+    @Value("${notifiers.email.resources.cacheMaxBytes:10485760}")
+    private long resourcesCacheMaxBytes = 10485760;
+
+    @Value("${notifiers.email.resources.dataUriCacheMaxBytes:2097152}")
+    private long resourcesDataUriCacheMaxBytes = 2097152;
+
+    /**
+     * Size above which template resources are streamed instead of being loaded in memory, 0 to always load them.
+     */
+    @Value("${notifiers.email.resources.streamThreshold:1048576}")
+    private long resourcesStreamThreshold = 1048576;
+
+    /**
+     * Either <code>caller</code> to render messages on the calling thread, or <code>worker</code> to render them on a
+     * dedicated executor.
+     */
+    @Value("${notifiers.email.execution.mode:caller}")
+    private String executionMode = "caller";
+
+    /**
+     * Max number of messages rendered at the same time in <code>worker</code> mode. The render executor is shared by
+     * all the notifiers, and sized by the first one using it.
+     */
+    @Value("${notifiers.email.execution.workerPoolSize:16}")
+    private int executionWorkerPoolSize = 16;
+
+    /**
+     * Max number of messages waiting to be rendered in <code>worker</code> mode, the next ones being rejected. Set, like
+     * the pool size, by the first notifier using the render executor.
+     */
+    @Value("${notifiers.email.execution.maxQueued:10000}")
+    private int executionMaxQueued = 10000;
+
+    /**
+     * Number of consecutive failures after which a relay is considered down, when several relays are configured.
+     */
+    @Value("${notifiers.email.relays.failureThreshold:5}")
+    private int relaysFailureThreshold = 5;
+
+    /**
+     * Time in milliseconds during which a relay considered down is skipped, before being probed again.
+     */
+    @Value("${notifiers.email.relays.openDuration:30000}")
+    private long relaysOpenDuration = 30000;
+
+    /**
+     * Suppress the emails identical to an email already sent within the window, for instance by another node.
+     */
+    @Value("${notifiers.email.suppression.enabled:false}")
+    private boolean suppressionEnabled = false;
+
+    @Value("${notifiers.email.suppression.window:300000}")
+    private long suppressionWindow = 300000;
+
+    /**
+     * The components identifying identical emails, among <code>from</code>, <code>recipients</code>,
+     * <code>subject</code>, <code>body</code> and <code>hook</code> (the <code>hook</code> parameter of the
+     * notification). Unknown components are rejected at startup.
+     */
+    @Value("${notifiers.email.suppression.fingerprint:subject,recipients,hook}")
+    private String suppressionFingerprint = "subject,recipients,hook";
+
+    private List<String> fingerprintComponents = List.of();
+
+    /**
+     * Aggregate the notifications of each recipient into periodic digest emails.
+     */
+    @Value("${notifiers.email.digest.enabled:false}")
+    private boolean digestEnabled = false;
+
+    @Value("${notifiers.email.digest.maxSize:100}")
+    private int digestMaxSize = 100;
+
+    @Value("${notifiers.email.digest.maxDelay:300000}")
+    private long digestMaxDelay = 300000;
+
+    /**
+     * Template of the subject of the digests, receiving the same model as the digest template.
+     */
+    @Value("${notifiers.email.digest.subject:}")
+    private String digestSubject = "";
+
+    /**
+     * Path of the digest template, relative to the templates directory.
+     */
+    @Value("${notifiers.email.digest.template:}")
+    private String digestTemplate = "";
+
+    /**
+     * Send the queued emails by priority: notifications are <code>HIGH</code>, <code>NORMAL</code> or <code>LOW</code>
+     * priority according to their priority parameter, or else to their hook.
+     */
+    @Value("${notifiers.email.priority.enabled:false}")
+    private boolean priorityEnabled = false;
+
+    @Value("${notifiers.email.priority.parameter:priority}")
+    private String priorityParameter = "priority";
+
+    /**
+     * Comma separated hooks of the high priority notifications.
+     */
+    @Value("${notifiers.email.priority.highHooks:}")
+    private String priorityHighHooks = "";
+
+    /**
+     * Comma separated hooks of the low priority notifications.
+     */
+    @Value("${notifiers.email.priority.lowHooks:}")
+    private String priorityLowHooks = "";
+
+    /**
+     * Number of concurrent sends of each SMTP endpoint kept available for the high priority notifications.
+     */
+    @Value("${notifiers.email.priority.reservedHigh:2}")
+    private int priorityReservedHigh = 2;
+
+    /**
+     * Number of concurrent sends of each SMTP endpoint kept available for the normal priority notifications.
+     */
+    @Value("${notifiers.email.priority.reservedNormal:1}")
+    private int priorityReservedNormal = 1;
+
+    /**
+     * Time in milliseconds after which a queued email is sent before the emails of higher priority, so that bulk
+     * notifications are never starved.
+     */
+    @Value("${notifiers.email.priority.maxWait:5000}")
+    private long priorityMaxWait = 5000;
+
+    /**
+     * Maximum number of notifications of a stream being sent or whose result has not been consumed yet.
+     */
+    @Value("${notifiers.email.stream.maxInFlight:32}")
+    private int streamMaxInFlight = 32;
+
+    @Value("${notifiers.email.batch.maxSize:50}")
+    private int batchMaxSize = 50;
+
+    @Value("${notifiers.email.batch.lingerTime:100}")
+    private long batchLingerTime = 100;
+
+    /**
+     * The Vert.x instance of the node, used to deliver the outbox at startup, before any notification is sent.
+     */
+    @Autowired(required = false)
+    private Vertx vertx;
+
     private final Configuration config = new Configuration(Configuration.VERSION_2_3_32);
 
+    private TemplateCache templateCache;
+
+    private Recipients recipientsParser;
+
+    private ResourceCache resourceCache;
+
+    private DataUriCache dataUriCache;
+
+    private final MailClientRegistry mailClientRegistry = MailClientRegistry.getInstance();
+
+    private final EmailNotifierMetrics metrics = EmailNotifierMetrics.load();
+
+    private SuppressionStore suppressionStore = SuppressionStore.load();
+
+    private DigestAggregator<DigestEntry> digestAggregator;
+
+    /**
+     * The sends in progress through the leases of the notifier, so that replaced leases are only released once the
+     * sends using them are complete.
+     */
+    private final Set<CompletableFuture<?>> pendingSends = ConcurrentHashMap.newKeySet();
+
+    private List<RelayLease> mailClientLeases = List.of();
+
+    /**
+     * The senders of the current leases, kept so that the messages of a batch sent through the same sender can be
+     * coalesced.
+     */
+    private final Map<SenderKey, MailSender> mailSenders = new ConcurrentHashMap<>();
+
+    private MailOutbox outbox;
+
+    private OutboxRouteKey outboxRouteKey;
+
+    private volatile EffectiveMailConfig effectiveMailConfig;
+
+    private final Object mailConfigLock = new Object();
+
+    private ScheduledFuture<?> mailConfigRefresh;
+
+    private TemplateDirectory.Watch templatesWatch;
+
+    /**
+     * Set once the notifier is destroyed: its leases are released, and new notifications are rejected rather than
+     * acquiring leases which would never be released.
+     */
+    private volatile boolean destroyed;
+
+    private volatile CompiledBody compiledBody;
+
     public EmailNotifier(EmailNotifierConfiguration configuration) {
         super(TYPE, configuration);
     }
 
     public void afterPropertiesSet() throws IOException {
         config.setNewBuiltinClassResolver(TemplateClassResolver.SAFER_RESOLVER);
-        config.setTemplateLoader(new FileTemplateLoader(new File(URLDecoder.decode(templatesPath, StandardCharsets.UTF_8))));
+        final File templatesDirectory = new File(URLDecoder.decode(templatesPath, StandardCharsets.UTF_8));
+        config.setTemplateLoader(new FileTemplateLoader(templatesDirectory));
+        config.setCacheStorage(new MruCacheStorage(templatesCacheStrongSize, Math.max(templatesCacheSoftSize, 0)));
+        if (templatesWatchEnabled) {
+            templatesWatch = TemplateDirectory.watch(config, templatesDirectory.toPath());
+        }
+        if (templatesWatch != null) {
+            config.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+        } else {
+            config.setTemplateUpdateDelayMilliseconds(templatesUpdateDelay);
+        }
+        templateCache = new TemplateCache(config, templatesCacheSize);
+        if (suppressionEnabled) {
+            fingerprintComponents = fingerprintComponents(suppressionFingerprint);
+        }
+        recipientsParser = new Recipients(templatesCacheSize);
+        resourceCache = new ResourceCache(resourcesCacheMaxBytes);
+        dataUriCache = new DataUriCache(resourcesDataUriCacheMaxBytes);
+
+        if (templatesWarmupEnabled) {
+            final int preloaded = TemplateDirectory.preload(
+                config,
+                templatesDirectory.toPath(),
+                Math.max(templatesCacheStrongSize, templatesCacheSoftSize)
+            );
+            logger.debug("{} email templates preloaded from {}", preloaded, templatesDirectory);
+        }
+
+        if (mailConfigRefreshInterval > 0) {
+            mailConfigRefresh = MAIL_CONFIG_REFRESHER.scheduleWithFixedDelay(
+                () -> {
+                    try {
+                        refreshMailConfig();
+                    } catch (final Exception ex) {
+                        logger.warn("Unable to refresh the email configuration", ex);
+                    }
+                },
+                mailConfigRefreshInterval,
+                mailConfigRefreshInterval,
+                TimeUnit.MILLISECONDS
+            );
+        }
+
+        if (outboxEnabled) {
+            openOutbox();
+        }
+    }
+
+    /**
+     * Open the outbox at startup, so that the messages journaled before a restart are delivered without waiting for a
+     * new notification.
+     */
+    private void openOutbox() {
+        final Context context = Vertx.currentContext();
+        final Vertx owner = context != null ? context.owner() : vertx;
+        if (owner == null) {
+            logger.warn("No Vert.x instance available, the email outbox will be delivered at the first notification");
+            return;
+        }
+        try {
+            outbox(owner);
+        } catch (final Exception ex) {
+            logger.error("Unable to open the email outbox, it will be delivered at the first notification", ex);
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if (digestAggregator != null) {
+            // Flush the pending digests before releasing the clients and the outbox they are sent through
+            digestAggregator.flushAll();
+        }
+        destroyed = true;
+        if (mailConfigRefresh != null) {
+            mailConfigRefresh.cancel(false);
+            mailConfigRefresh = null;
+        }
+        if (templatesWatch != null) {
+            templatesWatch.release();
+            templatesWatch = null;
+        }
+        if (outbox != null) {
+            // The outbox keeps delivering its pending messages through its own clients
+            outbox.release();
+            outbox = null;
+            outboxRouteKey = null;
+        }
+
+        // The flushed digests are still being sent
+        releaseLeases();
+    }
+
+    /**
+     * Release the current leases once the sends in progress are complete, since closing the clients would fail them.
+     */
+    private synchronized void releaseLeases() {
+        final List<RelayLease> leases = mailClientLeases;
+        mailClientLeases = List.of();
+        mailSenders.clear();
+        if (leases.isEmpty()) {
+            return;
+        }
+        CompletableFuture
+            .allOf(pendingSends.toArray(CompletableFuture[]::new))
+            .whenComplete((result, throwable) -> leases.forEach(RelayLease::release));
     }
 
     @Override
     public CompletableFuture<Void> doSend(final Notification notification, final Map<String, Object> parameters) {
+        return dispatch(parameters, false);
+    }
+
+    /**
+     * Send a notification, either through the outbox, a digest or directly.
+     *
+     * @param batched whether the notification is part of a batch, rendered on the render executor and grouped with the
+     *                other messages sent to the same SMTP endpoint
+     */
+    private CompletableFuture<Void> dispatch(final Map<String, Object> parameters, final boolean batched) {
         final CompletableFuture<Void> future = new CompletableFuture<>();
+        if (destroyed) {
+            future.completeExceptionally(new IllegalStateException("Email notifier has been destroyed"));
+            return future;
+        }
+        try {
+            final Vertx vertx = Vertx.currentContext().owner();
+            if (digestEnabled) {
+                addToDigests(vertx, parameters);
+                future.complete(null);
+                return future;
+            }
+
+            prepare(parameters, batched).whenComplete((mail, throwable) -> {
+                if (throwable != null) {
+                    final Throwable cause = throwable instanceof CompletionException ? throwable.getCause() : throwable;
+                    logger.error("Error while sending email notification", cause);
+                    future.completeExceptionally(cause);
+                } else {
+                    shouldSend(mail).thenAccept(send -> {
+                        if (send) {
+                            deliver(vertx, mail, batched, future);
+                        } else {
+                            future.complete(null);
+                        }
+                    });
+                }
+            });
+        } catch (final Exception ex) {
+            logger.error("Error while sending email notification", ex);
+            future.completeExceptionally(ex);
+        }
+        return future;
+    }
+
+    /**
+     * Render the message, either on the calling thread or on the render executor depending on the execution mode.
+     */
+    private CompletableFuture<PreparedMail> prepare(final Map<String, Object> parameters, final boolean batched) {
+        if (batched || WORKER_EXECUTION_MODE.equalsIgnoreCase(executionMode)) {
+            return CompletableFuture.supplyAsync(() -> prepareMailUnchecked(parameters), renderExecutor());
+        }
+
         try {
-            final MailMessage mailMessage = prepareMailMessage(parameters);
-            final MailConfig mailConfig = prepareMailConfig();
-            final MailClient mailClient = MailClient.create(Vertx.currentContext().owner(), mailConfig);
-            mailClient
-                .sendMail(mailMessage)
-                .onSuccess(result -> {
+            return CompletableFuture.completedFuture(prepareMail(parameters));
+        } catch (final Exception ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+    }
+
+    private void deliver(final Vertx vertx, final PreparedMail mail, final boolean batched, final CompletableFuture<Void> future) {
+        try {
+            final List<RelayLease> leases = mailClientLeases(vertx, future);
+            final MailClientRegistry.Lease lease = leases.get(0).lease();
+            final MailSender mailSender = mailSender(leases, mail.priority());
+            if (outboxEnabled) {
+                if (outbox(vertx).offer(mail.message(), mail.priority(), mail.fingerprint())) {
+                    logger.debug("Email has been added to the outbox");
+                    future.complete(null);
+                    return;
+                }
+                logger.warn("Email outbox is full or closed, sending email directly");
+            }
+
+            final CompletionStage<MailResult> sendResult = coalescingEnabled || batched
+                ? batcher(lease).submit(mail.message(), mail.coalescingKey(), mail.priority(), mailSender)
+                : mailSender.send(mail.message());
+            sendResult.whenComplete((result, cause) -> {
+                if (cause == null) {
                     logger.debug("Email {} has been send successfully!", result.getMessageID());
-                    mailClient.close();
                     future.complete(null);
-                })
-                .onFailure(cause -> {
+                } else {
                     logger.error("An error occurs while sending email", cause);
-                    mailClient.close();
-                    future.completeExceptionally(cause);
-                });
+                    forget(mail.fingerprint()).whenComplete((unused, throwable) -> future.completeExceptionally(cause));
+                }
+            });
         } catch (final Exception ex) {
             logger.error("Error while sending email notification", ex);
+            forget(mail.fingerprint()).whenComplete((unused, throwable) -> future.completeExceptionally(ex));
+        }
+    }
+
+    /**
+     * Buffer the notification in the digest of each of its recipients.
+     */
+    private void addToDigests(final Vertx vertx, final Map<String, Object> parameters) {
+        final DigestAggregator<DigestEntry> aggregator = digestAggregator();
+        final DigestEntry entry = new DigestEntry(vertx, parameters);
+        for (String recipient : renderRecipients(parameters)) {
+            aggregator.add(recipient, entry);
+        }
+    }
+
+    private synchronized DigestAggregator<DigestEntry> digestAggregator() {
+        if (digestAggregator == null) {
+            digestAggregator = new DigestAggregator<>(new DigestAggregator.Options(digestMaxSize, digestMaxDelay), this::sendDigest);
+            metrics.queueRegistered(configuration.getHost(), "digest", digestAggregator::pending);
+        }
+        return digestAggregator;
+    }
+
+    /**
+     * Send a digest to its recipient. The digest template receives the parameters of the notifications as
+     * <code>notifications</code>; without template, the bodies of the notifications are concatenated.
+     */
+    private void sendDigest(final DigestAggregator.Digest<DigestEntry> digest) {
+        final CompletableFuture<Void> future = new CompletableFuture<>();
+        try {
+            final List<Map<String, Object>> notifications = digest.items().stream().map(DigestEntry::parameters).toList();
+            final Map<String, Object> model = new HashMap<>();
+            model.put("notifications", notifications);
+            model.put("recipient", digest.key());
+
+            final String from = templateCache.render(configuration.getFrom(), notifications.get(0));
+            final String subject = templateCache.render(
+                digestSubject == null || digestSubject.isEmpty() ? DEFAULT_DIGEST_SUBJECT : digestSubject,
+                model
+            );
+            final MailMessage mailMessage = new MailMessage().setFrom(from).setTo(List.of(digest.key())).setSubject(subject);
+
+            final String html;
+            try (PooledWriter writer = PooledWriter.acquire()) {
+                if (digestTemplate == null || digestTemplate.isEmpty()) {
+                    final Template body = templateCache.get(compiledBody().html());
+                    for (Map<String, Object> notification : notifications) {
+                        if (writer.length() > 0) {
+                            writer.append("<hr>");
+                        }
+                        body.process(notification, writer);
+                    }
+                } else {
+                    config.getTemplate(digestTemplate).process(model, writer);
+                }
+                html = writer.toString();
+            }
+            addContentInMessage(mailMessage, html);
+
+            final PreparedMail mail = new PreparedMail(mailMessage, new ContentKey(from, subject, html), null, NotificationPriority.NORMAL);
+            deliver(digest.items().get(0).vertx(), mail, false, future);
+        } catch (final Exception ex) {
+            logger.error("Error while sending email digest", ex);
             future.completeExceptionally(ex);
         }
-        return future;
     }
 
-    MailMessage prepareMailMessage(final Map<String, Object> parameters) throws Exception {
+    /**
+     * Send several notifications at once. Messages are rendered in parallel, then grouped in batches sent through a
+     * single connection to the SMTP endpoint. The notifications otherwise go through the outbox or the digests like
+     * single ones.
+     *
+     * @param requests the notifications to send, along with their parameters
+     * @return a future per notification, in the same order as the requests
+     */
+    public List<CompletableFuture<Void>> sendBatch(final List<NotificationRequest> requests) {
+        return requests.stream().map(request -> dispatch(request.parameters(), true)).toList();
+    }
+
+    /**
+     * Send a stream of notifications. Notifications are only fetched from the stream as their predecessors are sent and
+     * their results consumed, so that a burst of notifications slows its producer down rather than piling up sends.
+     * Must be called on a Vert.x context.
+     *
+     * @param requests the notifications to send
+     * @return the results of the sends, in the order they complete
+     */
+    public ReadStream<DeliveryResult> sendStream(final ReadStream<NotificationRequest> requests) {
+        final Context context = Vertx.currentContext();
+        if (context == null) {
+            throw new IllegalStateException("Streams of notifications must be sent from a Vert.x context");
+        }
+        return new NotificationStream(context, requests, request -> send(request.notification(), request.parameters()), streamMaxInFlight);
+    }
+
+    /**
+     * Get the priority of a notification: the value of its priority parameter if valid, or else the priority of its
+     * hook.
+     */
+    private NotificationPriority priority(final Map<String, Object> parameters) {
+        if (!priorityEnabled || parameters == null) {
+            return NotificationPriority.NORMAL;
+        }
+
+        final Object priority = parameters.get(priorityParameter);
+        if (priority != null) {
+            try {
+                return NotificationPriority.valueOf(priority.toString().trim().toUpperCase(Locale.ROOT));
+            } catch (final IllegalArgumentException ex) {
+                logger.debug("Ignoring invalid notification priority {}", priority);
+            }
+        }
+
+        final Object hook = parameters.get(HOOK_PARAMETER);
+        if (hook != null) {
+            if (containsHook(priorityHighHooks, hook.toString())) {
+                return NotificationPriority.HIGH;
+            } else if (containsHook(priorityLowHooks, hook.toString())) {
+                return NotificationPriority.LOW;
+            }
+        }
+        return NotificationPriority.NORMAL;
+    }
+
+    private static boolean containsHook(final String hooks, final String hook) {
+        if (hooks == null || hooks.isEmpty()) {
+            return false;
+        }
+        for (String candidate : hooks.split(",")) {
+            if (candidate.trim().equalsIgnoreCase(hook)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check the email against the suppression store, if enabled. The email is sent if the store is unavailable.
+     *
+     * @return <code>false</code> if an identical email has already been sent within the suppression window
+     */
+    private CompletionStage<Boolean> shouldSend(final PreparedMail mail) {
+        if (mail.fingerprint() == null) {
+            return CompletableFuture.completedFuture(true);
+        }
+
+        return suppressionStore
+            .tryRecord(mail.fingerprint(), Duration.ofMillis(suppressionWindow))
+            .exceptionally(throwable -> {
+                logger.warn("Unable to check whether the email has already been sent, sending it", throwable);
+                return true;
+            })
+            .thenApply(send -> {
+                if (!send) {
+                    logger.debug("Email suppressed, an identical email has already been sent");
+                    metrics.mailSuppressed(configuration.getHost());
+                }
+                return send;
+            });
+    }
+
+    /**
+     * Forget the fingerprint of an email which could not be sent, so that it is neither suppressed on the other nodes
+     * nor when notified again within the suppression window.
+     */
+    private CompletionStage<Void> forget(final String fingerprint) {
+        if (fingerprint == null) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return suppressionStore
+            .forget(fingerprint)
+            .exceptionally(throwable -> {
+                logger.warn("Unable to forget the email which could not be sent, identical emails may be suppressed", throwable);
+                return null;
+            });
+    }
+
+    /**
+     * Get a lease on the shared client of each relay for the current mail configuration, the main host first. The
+     * leases are renewed whenever the effective configuration changes, so that a stale client is never used for a new
+     * SMTP endpoint.
+     *
+     * @param send completes once the send through the leases is complete, until which they are not released
+     */
+    private synchronized List<RelayLease> mailClientLeases(final Vertx vertx, final CompletableFuture<?> send) {
+        if (destroyed) {
+            throw new IllegalStateException("Email notifier has been destroyed");
+        }
+        final List<RelayConfig> relays = effectiveMailConfig().relays();
+        if (!leasesMatch(vertx, relays)) {
+            releaseLeases();
+            mailClientLeases =
+                relays.stream().map(relay -> new RelayLease(relay, mailClientRegistry.acquire(vertx, relay.mailConfig()))).toList();
+        }
+        pendingSends.add(send);
+        send.whenComplete((result, throwable) -> pendingSends.remove(send));
+        return mailClientLeases;
+    }
+
+    private boolean leasesMatch(final Vertx vertx, final List<RelayConfig> relays) {
+        if (mailClientLeases.size() != relays.size()) {
+            return false;
+        }
+        for (int i = 0; i < relays.size(); i++) {
+            final RelayLease relayLease = mailClientLeases.get(i);
+            if (relayLease.relay() != relays.get(i) || !relayLease.lease().matches(vertx, relays.get(i).mailConfig())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the sender of the messages, spreading them over the relays if there are several of them. The sender is
+     * created once per leases, priority and limits.
+     */
+    private MailSender mailSender(final List<RelayLease> leases, final NotificationPriority priority) {
+        final SenderKey key = new SenderKey(leases, priority, limiterOptions(), configuration.getRelayStrategy());
+        return mailSenders.computeIfAbsent(key, k -> createMailSender(leases, priority, k.limiterOptions()));
+    }
+
+    private MailSender createMailSender(
+        final List<RelayLease> leases,
+        final NotificationPriority priority,
+        final SendLimiter.Options options
+    ) {
+        if (leases.size() == 1) {
+            final RelayRouter.RelaySender relaySender = relaySender(leases.get(0), priority, options);
+            return message -> relaySender.send(message, () -> {});
+        }
+
+        final RelayHealth.Options healthOptions = new RelayHealth.Options(relaysFailureThreshold, relaysOpenDuration * 1_000_000);
+        final List<RelayRouter.Relay> relays = leases
+            .stream()
+            .map(relayLease -> {
+                final RelayConfig relay = relayLease.relay();
+                final RelayHealth health = RelayHealth.of(relay.key(), healthOptions);
+                return new RelayRouter.Relay(relay.key(), relay.weight(), health, relaySender(relayLease, priority, options));
+            })
+            .toList();
+        return new RelayRouter(configuration.getRelayStrategy(), relays);
+    }
+
+    /**
+     * Get the rate limit and concurrency cap of each relay. With priorities, the concurrency is capped to the size of
+     * the connection pool if not configured, so that the emails wait in the priority queues rather than for a
+     * connection.
+     */
+    private SendLimiter.Options limiterOptions() {
+        final int maxConcurrent = priorityEnabled && configuration.getMaxConcurrentSends() <= 0
+            ? poolMaxSize
+            : configuration.getMaxConcurrentSends();
+        final SendLimiter.Lanes lanes = priorityEnabled
+            ? new SendLimiter.Lanes(priorityReservedHigh, priorityReservedNormal, TimeUnit.MILLISECONDS.toNanos(priorityMaxWait))
+            : SendLimiter.Lanes.NONE;
+        return new SendLimiter.Options(
+            configuration.getRateLimit(),
+            maxConcurrent,
+            configuration.getMaxQueuedSends(),
+            configuration.getQueueOverflowPolicy(),
+            lanes
+        );
+    }
+
+    /**
+     * Get the sender of the messages to a relay, applying the rate limit and concurrency cap of the relay if any.
+     */
+    private RelayRouter.RelaySender relaySender(
+        final RelayLease relayLease,
+        final NotificationPriority priority,
+        final SendLimiter.Options options
+    ) {
+        final String host = relayLease.relay().host();
+        final MailClient mailClient = relayLease.lease().client();
+        final RelayRouter.RelaySender clientSender = (message, started) -> {
+            started.run();
+            return timed(host, mailClient.sendMail(message).toCompletionStage());
+        };
+        if (options.isUnlimited()) {
+            return clientSender;
+        }
+
+        final SendLimiter limiter = SendLimiter.of(relayLease.relay().key(), options, created -> monitorLimiter(host, created));
+        relayLease.limiters().add(limiter);
+        return (message, started) -> limiter.submit(priority, () -> clientSender.send(message, started));
+    }
+
+    private CompletionStage<MailResult> timed(final String host, final CompletionStage<MailResult> send) {
+        final long start = System.nanoTime();
+        return send.whenComplete((result, cause) -> {
+            final String replyCode = cause == null ? SmtpReplyCodes.OK : SmtpReplyCodes.of(cause);
+            metrics.mailSent(host, System.nanoTime() - start, cause == null, replyCode);
+        });
+    }
+
+    /**
+     * Register the depth and the overflow counters of a limiter to the metrics, once when the limiter is created.
+     */
+    private void monitorLimiter(final String host, final SendLimiter limiter) {
+        metrics.queueRegistered(host, "limiter", limiter::queued);
+        metrics.overflowRegistered(host, "throttled", limiter::throttled);
+        metrics.overflowRegistered(host, "rejected", limiter::rejected);
+    }
+
+    private String endpointKey() {
+        return relayKey(configuration.getHost(), configuration.getPort());
+    }
+
+    private String relayKey(final String host, final int port) {
+        return host + ':' + port + ':' + configuration.getUsername();
+    }
+
+    /**
+     * Get the outbox of the SMTP endpoint, there is one journal per host, port and username. The outbox is opened once
+     * per notifier, and rerouted whenever the effective configuration changes.
+     */
+    private synchronized MailOutbox outbox(final Vertx vertx) {
+        final Path file = Path.of(outboxPath, endpointKey().replaceAll("[^a-zA-Z0-9._-]", "_") + ".journal");
+        final OutboxRouteKey routeKey = new OutboxRouteKey(
+            vertx,
+            effectiveMailConfig().relays(),
+            limiterOptions(),
+            configuration.getRelayStrategy()
+        );
+        if (outbox == null || !outbox.file().equals(file)) {
+            if (outbox != null) {
+                outbox.release();
+            }
+            outbox =
+                MailOutbox.open(
+                    vertx,
+                    file,
+                    new MailOutbox.Options(outboxCapacity, outboxMaxAttempts, outboxInitialBackoff, outboxMaxBackoff),
+                    routeKey,
+                    () -> outboxRoute(routeKey),
+                    opened -> metrics.queueRegistered(configuration.getHost(), "outbox", opened::size)
+                );
+        } else if (!routeKey.equals(outboxRouteKey)) {
+            outbox.reroute(routeKey, () -> outboxRoute(routeKey));
+        }
+        outboxRouteKey = routeKey;
+        return outbox;
+    }
+
+    /**
+     * Get the route of the outbox messages, through leases of its own on the clients of the relays.
+     */
+    private MailOutbox.Route outboxRoute(final OutboxRouteKey key) {
+        final List<RelayLease> leases = key
+            .relays()
+            .stream()
+            .map(relay -> new RelayLease(relay, mailClientRegistry.acquire(key.vertx(), relay.mailConfig())))
+            .toList();
+        final Map<NotificationPriority, MailSender> senders = new EnumMap<>(NotificationPriority.class);
+        for (NotificationPriority priority : NotificationPriority.values()) {
+            senders.put(priority, createMailSender(leases, priority, key.limiterOptions()));
+        }
+        return new OutboxRoute(senders, leases, this::forget);
+    }
+
+    private MailBatcher batcher(final MailClientRegistry.Lease lease) {
+        return lease.batcher(batchOptions(), created -> metrics.queueRegistered(configuration.getHost(), "batch", created::pending));
+    }
+
+    private RenderExecutor renderExecutor() {
+        return RenderExecutor.shared(executionWorkerPoolSize, executionMaxQueued);
+    }
+
+    private MailBatcher.Options batchOptions() {
+        return new MailBatcher.Options(batchMaxSize, batchLingerTime, coalescingEnabled, coalescingBcc, coalescingMaxRecipients);
+    }
+
+    private PreparedMail prepareMailUnchecked(final Map<String, Object> parameters) {
+        try {
+            return prepareMail(parameters);
+        } catch (final RuntimeException ex) {
+            throw ex;
+        } catch (final Exception ex) {
+            throw new CompletionException(ex);
+        }
+    }
+
+    private List<String> renderRecipients(final Map<String, Object> parameters) {
         String recipients = configuration.getTo();
 
         try {
-            recipients = templatize(recipients, parameters);
+            recipients = templateCache.render(recipients, parameters);
         } catch (Exception ex) {
             throw new IllegalArgumentException("Invalid email recipient(s)", ex);
         }
@@ -112,138 +993,485 @@ public class EmailNotifier extends AbstractConfigurableNotifier<EmailNotifierCon
             throw new IllegalArgumentException("Invalid email recipient(s)");
         }
 
-        final MailMessage mailMessage = new MailMessage()
-            .setFrom(templatize(configuration.getFrom(), parameters))
-            .setTo(Arrays.stream(recipients.split(RECIPIENTS_SPLIT_REGEX)).collect(toList()));
+        final Recipients.Result to = recipientsParser.parse(recipients);
+        if (!to.invalid().isEmpty()) {
+            logger.warn("Ignoring invalid email recipient(s): {}", to.invalid());
+        }
+        if (to.valid().isEmpty()) {
+            throw new IllegalArgumentException("Invalid email recipient(s)");
+        }
+        return to.valid();
+    }
 
-        mailMessage.setSubject(templatize(configuration.getSubject(), parameters));
-        String body = configuration
-            .getBody()
-            // Replace `\n` with <br> tags
-            .replace("\n", "<br>");
+    MailMessage prepareMailMessage(final Map<String, Object> parameters) throws Exception {
+        return prepareMail(parameters).message();
+    }
 
-        addContentInMessage(mailMessage, templatize(body, parameters));
+    private PreparedMail prepareMail(final Map<String, Object> parameters) throws Exception {
+        final long renderStart = System.nanoTime();
+        final List<String> to = renderRecipients(parameters);
+
+        final String from = templateCache.render(configuration.getFrom(), parameters);
+        final MailMessage mailMessage = new MailMessage().setFrom(from).setTo(to);
+
+        final String subject = templateCache.render(configuration.getSubject(), parameters);
+        mailMessage.setSubject(subject);
+
+        final CompiledBody body = compiledBody();
+        final BodyTemplate.Rendered rendered = body.template() == null ? null : body.template().render(parameters);
+        if (rendered != null) {
+            // Only the slots of the body have been rendered, the static segments are already processed
+            final long htmlStart = System.nanoTime();
+            metrics.templateRendered(configuration.getHost(), htmlStart - renderStart);
+
+            final List<MailAttachment> mailAttachments = new ArrayList<>();
+            final Map<Object, String> contentIds = new HashMap<>();
+            mailMessage.setHtml(rendered.write(src -> inlineImage(src, mailAttachments, contentIds)));
+            if (!mailAttachments.isEmpty()) {
+                mailMessage.setInlineAttachment(mailAttachments);
+            }
+            metrics.htmlProcessed(configuration.getHost(), System.nanoTime() - htmlStart);
+
+            final String fingerprint = suppressionEnabled ? fingerprint(mailMessage, rendered.html(), parameters) : null;
+            return new PreparedMail(mailMessage, new ContentKey(from, subject, rendered), fingerprint, priority(parameters));
+        }
 
-        return mailMessage;
+        final String html = templateCache.render(body.html(), parameters);
+        final long htmlStart = System.nanoTime();
+        metrics.templateRendered(configuration.getHost(), htmlStart - renderStart);
+
+        addContentInMessage(mailMessage, html);
+        metrics.htmlProcessed(configuration.getHost(), System.nanoTime() - htmlStart);
+
+        final String fingerprint = suppressionEnabled ? fingerprint(mailMessage, html, parameters) : null;
+        return new PreparedMail(mailMessage, new ContentKey(from, subject, html), fingerprint, priority(parameters));
+    }
+
+    /**
+     * Get the body template of the configuration, split into static segments and dynamic slots when possible. It is
+     * computed once and shared by all the sends until the configured body changes.
+     */
+    private CompiledBody compiledBody() {
+        final String source = configuration.getBody();
+        CompiledBody current = compiledBody;
+        if (current == null || !current.source().equals(source)) {
+            // Replace `\n` with <br> tags
+            final String html = source.replace("\n", "<br>");
+            BodyTemplate template;
+            try {
+                template = BodyTemplate.compile(html, config);
+            } catch (final Exception ex) {
+                // Let the whole body be rendered, and the error be reported as usual
+                template = null;
+            }
+            current = new CompiledBody(source, html, template);
+            compiledBody = current;
+        }
+        return current;
     }
 
+    /**
+     * Get the effective mail configuration. It is computed once and shared by all the sends until the configuration or
+     * the content of the key store changes, so that the pooled client, and the TLS sessions it caches, are kept.
+     *
+     * @return the effective mail configuration, which must not be modified
+     */
     MailConfig prepareMailConfig() {
+        return effectiveMailConfig().mailConfig();
+    }
+
+    private EffectiveMailConfig effectiveMailConfig() {
+        final EffectiveMailConfig current = effectiveMailConfig;
+        if (current != null) {
+            return current;
+        }
+        synchronized (mailConfigLock) {
+            return resolveMailConfig();
+        }
+    }
+
+    /**
+     * Resolve the mail configuration again, rebuilding it only if the configuration or the content of the key store
+     * changed. Called periodically rather than on each send, since it reads the file system.
+     */
+    void refreshMailConfig() {
+        synchronized (mailConfigLock) {
+            resolveMailConfig();
+        }
+    }
+
+    private EffectiveMailConfig resolveMailConfig() {
+        final MailSettings settings = new MailSettings(
+            configuration.getHost(),
+            configuration.getPort(),
+            configuration.getUsername(),
+            configuration.getPassword(),
+            configuration.isSslTrustAll(),
+            configuration.getSslKeyStore(),
+            configuration.getSslKeyStorePassword(),
+            configuration.isStartTLSEnabled(),
+            configuration.getAuthMethods() == null ? null : Set.copyOf(configuration.getAuthMethods()),
+            poolMaxSize,
+            poolKeepAliveTimeout,
+            pipeliningEnabled,
+            relaySettings()
+        );
+        final long keyStoreLastModified = lastModified(settings.sslKeyStore());
+
+        EffectiveMailConfig current = effectiveMailConfig;
+        if (current == null || current.keyStoreLastModified() != keyStoreLastModified || !current.settings().equals(settings)) {
+            final MailConfig mailConfig = buildMailConfig(settings);
+            final List<RelayConfig> relays = new ArrayList<>();
+            relays.add(new RelayConfig(relayKey(settings.host(), settings.port()), settings.host(), 1, mailConfig));
+            for (RelaySettings relay : settings.relays()) {
+                final MailConfig relayMailConfig = new MailConfig(mailConfig).setHostname(relay.host()).setPort(relay.port());
+                relays.add(new RelayConfig(relayKey(relay.host(), relay.port()), relay.host(), relay.weight(), relayMailConfig));
+            }
+            current = new EffectiveMailConfig(settings, keyStoreLastModified, mailConfig, List.copyOf(relays));
+            effectiveMailConfig = current;
+        }
+        return current;
+    }
+
+    private List<RelaySettings> relaySettings() {
+        if (configuration.getRelays() == null || configuration.getRelays().isEmpty()) {
+            return List.of();
+        }
+        return configuration
+            .getRelays()
+            .stream()
+            .filter(relay -> relay.getHost() != null && !relay.getHost().isEmpty())
+            .map(relay -> new RelaySettings(relay.getHost(), relay.getPort(), relay.getWeight()))
+            .toList();
+    }
+
+    private MailConfig buildMailConfig(final MailSettings settings) {
         final MailConfig mailConfig = new MailConfig()
-            .setHostname(configuration.getHost())
-            .setPort(configuration.getPort())
-            .setTrustAll(configuration.isSslTrustAll());
+            .setHostname(settings.host())
+            .setPort(settings.port())
+            .setTrustAll(settings.sslTrustAll())
+            .setKeepAlive(true)
+            .setMaxPoolSize(settings.poolMaxSize())
+            .setKeepAliveTimeout(settings.poolKeepAliveTimeout())
+            .setPipelining(settings.pipelining());
 
-        if (hasCredentials()) {
-            mailConfig.setUsername(configuration.getUsername());
-            mailConfig.setPassword(configuration.getPassword());
+        if (hasCredentials(settings)) {
+            mailConfig.setUsername(settings.username());
+            mailConfig.setPassword(settings.password());
         } else {
             mailConfig.setLogin(LoginOption.DISABLED);
         }
 
-        if (nonNull(configuration.getSslKeyStore())) {
-            var jksOptions = new io.vertx.core.net.JksOptions().setPath(configuration.getSslKeyStore());
-            if (nonNull(configuration.getSslKeyStorePassword())) {
-                jksOptions.setPassword(configuration.getSslKeyStorePassword());
+        if (nonNull(settings.sslKeyStore())) {
+            var jksOptions = keyStore(settings.sslKeyStore());
+            if (nonNull(settings.sslKeyStorePassword())) {
+                jksOptions.setPassword(settings.sslKeyStorePassword());
             }
             mailConfig.setKeyCertOptions(jksOptions);
         }
 
-        if (configuration.isStartTLSEnabled()) {
+        if (settings.startTLSEnabled()) {
             mailConfig.setStarttls(StartTLSOptions.REQUIRED);
         } else {
             mailConfig.setStarttls(StartTLSOptions.DISABLED);
         }
 
-        if (hasAuthMethods()) {
-            var authMethods = configuration.getAuthMethods().stream().map(String::toUpperCase).collect(joining(" "));
+        if (hasAuthMethods(settings)) {
+            var authMethods = settings.authMethods().stream().map(String::toUpperCase).collect(joining(" "));
             mailConfig.setAuthMethods(authMethods);
         }
 
         return mailConfig;
     }
 
-    private boolean hasAuthMethods() {
-        return nonNull(configuration.getAuthMethods()) && !configuration.getAuthMethods().isEmpty();
+    /**
+     * Load the key material once instead of letting the client read the key store from the disk. If the key store
+     * cannot be read, its path is given to the client which reports the error as before.
+     */
+    private JksOptions keyStore(final String path) {
+        try {
+            return new JksOptions().setValue(buffer(Files.readAllBytes(Path.of(path))));
+        } catch (final IOException | InvalidPathException ex) {
+            logger.warn("Unable to load the key store {}", path, ex);
+            return new JksOptions().setPath(path);
+        }
+    }
+
+    private static long lastModified(final String path) {
+        if (path == null) {
+            return 0;
+        }
+        try {
+            return Files.getLastModifiedTime(Path.of(path)).toMillis();
+        } catch (final IOException | InvalidPathException ex) {
+            return -1;
+        }
+    }
+
+    private static boolean hasAuthMethods(final MailSettings settings) {
+        return nonNull(settings.authMethods()) && !settings.authMethods().isEmpty();
     }
 
-    private boolean hasCredentials() {
+    private static boolean hasCredentials(final MailSettings settings) {
         return (
-            configuration.getUsername() != null &&
-            !configuration.getUsername().isEmpty() &&
-            configuration.getPassword() != null &&
-            !configuration.getPassword().isEmpty()
+            settings.username() != null &&
+            !settings.username().isEmpty() &&
+            settings.password() != null &&
+            !settings.password().isEmpty()
         );
     }
 
-    private void addContentInMessage(final MailMessage mailMessage, final String htmlText) throws Exception {
-        final Document document = Jsoup.parse(htmlText);
-        final Elements imageElements = document.getElementsByTag("img");
+    void addContentInMessage(final MailMessage mailMessage, final String htmlText) throws Exception {
+        if (!ImageSources.hasImage(htmlText)) {
+            mailMessage.setHtml(htmlText);
+            return;
+        }
 
-        final List<Element> resources = imageElements
-            .stream()
-            .filter(imageElement -> imageElement.hasAttr("src") && !imageElement.attr("src").startsWith("http"))
-            .toList();
+        final List<MailAttachment> mailAttachments = new ArrayList<>();
+        final Map<Object, String> contentIds = new HashMap<>();
+        final String html = ImageSources.rewrite(htmlText, src -> inlineImage(src, mailAttachments, contentIds));
 
-        if (!resources.isEmpty()) {
-            final List<MailAttachment> mailAttachments = new ArrayList<>(resources.size());
-            for (final Element res : resources) {
-                final MailAttachment attachment = new MailAttachmentImpl();
-
-                String source = res.attr("src").trim();
-                boolean addAttachment = true;
-                if (source.startsWith("data:image/")) {
-                    final String value = source.replaceFirst("^data:image/[^;]*;base64,?", "");
-                    byte[] bytes = Base64.getDecoder().decode(value.getBytes(StandardCharsets.UTF_8));
-                    attachment.setContentType(extractMimeType(source));
-                    attachment.setData(buffer(bytes));
-                } else {
-                    File file = new File(templatesPath, source);
-                    if (file.getCanonicalPath().startsWith(templatesPath)) {
-                        attachment.setContentType(getContentTypeByFileName(source));
-                        attachment.setData(buffer(readAllBytes(file.toPath())));
-                    } else {
-                        logger.warn("Resource path invalid : {}", file.getPath());
-                        addAttachment = false;
-                    }
-                }
+        if (!mailAttachments.isEmpty()) {
+            // Attach images
+            mailMessage.setInlineAttachment(mailAttachments);
+        }
 
-                String contentId = UUID.random().toString();
-                res.attr("src", "cid:" + contentId);
-                attachment.setContentId('<' + contentId + '>');
-                attachment.setDisposition("inline");
+        // Set HTML content
+        mailMessage.setHtml(html);
+    }
 
-                if (addAttachment) {
-                    mailAttachments.add(attachment);
-                }
+    /**
+     * Inline the image of the given source in the email. Identical images of an email share the same inline part.
+     *
+     * @param contentIds the content ids of the images already inlined in the email, by data URI digest or file path
+     */
+    private String inlineImage(final String src, final List<MailAttachment> mailAttachments, final Map<Object, String> contentIds)
+        throws IOException {
+        if (src.startsWith("http")) {
+            return null;
+        }
+
+        String source = src.trim();
+        if (source.startsWith("data:image/")) {
+            final DataUriCache.Image image = dataUriCache.get(source);
+            String contentId = contentIds.get(image.digest());
+            if (contentId == null) {
+                contentId = UUID.random().toString();
+                contentIds.put(image.digest(), contentId);
+                mailAttachments.add(image.inlineAttachment(contentId));
+                metrics.attachmentLoaded(configuration.getHost(), image.size());
             }
+            return "cid:" + contentId;
+        }
 
-            // Attach images
-            mailMessage.setInlineAttachment(mailAttachments);
+        File file = new File(templatesPath, source);
+        String canonicalPath = file.getCanonicalPath();
+        if (!canonicalPath.startsWith(templatesPath)) {
+            logger.warn("Resource path invalid : {}", file.getPath());
+            return "cid:" + UUID.random().toString();
         }
 
-        // Set HTML content
-        mailMessage.setHtml(document.html());
+        final Path path = Path.of(canonicalPath);
+        String contentId = contentIds.get(path);
+        if (contentId == null) {
+            contentId = UUID.random().toString();
+            contentIds.put(path, contentId);
+            final long size = Files.size(path);
+            if (isStreamed(size)) {
+                final MailAttachment attachment = new MailAttachmentImpl()
+                    .setContentType(ResourceCache.getContentTypeByFileName(path.getFileName().toString()))
+                    .setStream(new FileAttachmentStream(path))
+                    .setSize((int) size);
+                mailAttachments.add(inline(attachment, contentId));
+            } else {
+                // Only the content id differs from the other emails using the resource
+                mailAttachments.add(resourceCache.get(path).inlineAttachment(contentId));
+            }
+            metrics.attachmentLoaded(configuration.getHost(), size);
+        }
+        return "cid:" + contentId;
     }
 
-    private String getContentTypeByFileName(final String fileName) {
-        if (fileName == null) {
-            return "";
-        } else if (fileName.endsWith(".png")) {
-            return "image/png";
+    private static MailAttachment inline(final MailAttachment attachment, final String contentId) {
+        return attachment.setDisposition("inline").setContentId('<' + contentId + '>');
+    }
+
+    /**
+     * Parse the components of the fingerprint of the emails, rejecting the unknown ones since they would give every
+     * email the same fingerprint.
+     */
+    private static List<String> fingerprintComponents(final String fingerprint) {
+        final List<String> components = new ArrayList<>();
+        for (String component : fingerprint.split(",")) {
+            final String name = component.trim().toLowerCase(Locale.ROOT);
+            if (name.isEmpty()) {
+                continue;
+            }
+            if (!FINGERPRINT_COMPONENTS.contains(name)) {
+                throw new IllegalArgumentException("Unknown email fingerprint component: " + component.trim());
+            }
+            components.add(name);
+        }
+        if (components.isEmpty()) {
+            throw new IllegalArgumentException("No email fingerprint component configured");
         }
-        return MimetypesFileTypeMap.getDefaultFileTypeMap().getContentType(fileName);
+        return List.copyOf(components);
     }
 
     /**
-     * Extract the MIME type from a base64 string
-     * @param encoded Base64 string
-     * @return MIME type string
+     * Compute the fingerprint of an email from the components configured for the suppression.
      */
-    private static String extractMimeType(final String encoded) {
-        final Pattern mime = Pattern.compile("^data:([a-zA-Z0-9]+/[a-zA-Z0-9]+).*,.*");
-        final Matcher matcher = mime.matcher(encoded);
-        if (!matcher.find()) return "";
-        return matcher.group(1).toLowerCase();
+    private String fingerprint(final MailMessage mailMessage, final String html, final Map<String, Object> parameters) {
+        final List<String> components = new ArrayList<>(fingerprintComponents.size());
+        for (String component : fingerprintComponents) {
+            switch (component) {
+                case "from" -> components.add(mailMessage.getFrom());
+                case "recipients" -> components.add(String.join(",", mailMessage.getTo()));
+                case "subject" -> components.add(mailMessage.getSubject());
+                case "body" -> components.add(html);
+                default -> components.add(parameters == null ? null : Objects.toString(parameters.get(HOOK_PARAMETER), null));
+            }
+        }
+        return Fingerprints.of(components);
+    }
+
+    /**
+     * Large files are streamed to the SMTP connection rather than loaded in memory, unless the message has to be
+     * serialized in the outbox, or may be sent again through another relay since a stream can only be read once.
+     */
+    private boolean isStreamed(final long size) {
+        return (
+            resourcesStreamThreshold > 0 &&
+            size > resourcesStreamThreshold &&
+            size <= Integer.MAX_VALUE &&
+            !outboxEnabled &&
+            effectiveMailConfig().relays().size() == 1
+        );
+    }
+
+    /**
+     * A message ready to be sent, along with the key identifying its content for coalescing.
+     */
+    private record PreparedMail(MailMessage message, ContentKey coalescingKey, String fingerprint, NotificationPriority priority) {}
+
+    /**
+     * The settings the effective mail configuration is computed from.
+     */
+    private record MailSettings(
+        String host,
+        int port,
+        String username,
+        String password,
+        boolean sslTrustAll,
+        String sslKeyStore,
+        String sslKeyStorePassword,
+        boolean startTLSEnabled,
+        Set<String> authMethods,
+        int poolMaxSize,
+        int poolKeepAliveTimeout,
+        boolean pipelining,
+        List<RelaySettings> relays
+    ) {
+        private MailSettings {
+            authMethods = authMethods == null ? null : Set.copyOf(authMethods);
+        }
+    }
+
+    private record RelaySettings(String host, int port, int weight) {}
+
+    /**
+     * A notification buffered in a digest.
+     */
+    private record DigestEntry(Vertx vertx, Map<String, Object> parameters) {}
+
+    /**
+     * The effective mail configuration, along with the ones of the relays, the main host being the first relay.
+     */
+    private record EffectiveMailConfig(MailSettings settings, long keyStoreLastModified, MailConfig mailConfig, List<RelayConfig> relays) {}
+
+    private record RelayConfig(String key, String host, int weight, MailConfig mailConfig) {}
+
+    /**
+     * A lease on the client of a relay, along with the limiters of the senders created on it.
+     */
+    private static final class RelayLease {
+
+        private final RelayConfig relay;
+        private final MailClientRegistry.Lease lease;
+        private final List<SendLimiter> limiters = new CopyOnWriteArrayList<>();
+
+        private RelayLease(final RelayConfig relay, final MailClientRegistry.Lease lease) {
+            this.relay = relay;
+            this.lease = lease;
+        }
+
+        RelayConfig relay() {
+            return relay;
+        }
+
+        MailClientRegistry.Lease lease() {
+            return lease;
+        }
+
+        List<SendLimiter> limiters() {
+            return limiters;
+        }
+
+        void release() {
+            limiters.forEach(SendLimiter::release);
+            lease.release();
+        }
+    }
+
+    private record OutboxRouteKey(
+        Vertx vertx,
+        List<RelayConfig> relays,
+        SendLimiter.Options limiterOptions,
+        RelayStrategy relayStrategy
+    ) {}
+
+    private record OutboxRoute(Map<NotificationPriority, MailSender> senders, List<RelayLease> leases, Consumer<String> forget)
+        implements MailOutbox.Route {
+        @Override
+        public MailSender sender(final NotificationPriority priority) {
+            return senders.get(priority);
+        }
+
+        @Override
+        public void deadLettered(final String fingerprint) {
+            forget.accept(fingerprint);
+        }
+
+        @Override
+        public void release() {
+            leases.forEach(RelayLease::release);
+        }
+    }
+
+    private record SenderKey(
+        List<RelayLease> leases,
+        NotificationPriority priority,
+        SendLimiter.Options limiterOptions,
+        RelayStrategy relayStrategy
+    ) {}
+
+    /**
+     * The rendered content of a message, computed before images are inlined since their content ids are random. The
+     * HTML is either the rendered body or, for partially evaluated bodies, its rendered slots.
+     */
+    private record ContentKey(String from, String subject, Object html) {}
+
+    /**
+     * The configured body, with its line breaks converted, and its partially evaluated template if it has one.
+     */
+    private record CompiledBody(String source, String html, BodyTemplate template) {}
+
+    TemplateCache getTemplateCache() {
+        return templateCache;
+    }
+
+    ResourceCache getResourceCache() {
+        return resourceCache;
     }
 
     public String getTemplatesPath() {
@@ -0,0 +1,212 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.address;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parser of the recipients of an email, separated by commas, semicolons or whitespaces.
+ *
+ * The list is scanned once: empty entries are dropped, each address is validated against the RFC 5321 mailbox syntax
+ * and duplicates are removed. Since the same rendered list is usually sent to many times, results are cached by list.
+ *
+ * @author GraviteeSource Team
+ */
+public class Recipients {
+
+    private static final int MAX_LOCAL_PART_LENGTH = 64;
+
+    private static final int MAX_DOMAIN_LENGTH = 255;
+
+    private static final int MAX_PATH_LENGTH = 254;
+
+    private final Map<String, Result> results;
+
+    public Recipients(final int cacheSize) {
+        this.results =
+            new LinkedHashMap<>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(final Map.Entry<String, Result> eldest) {
+                    return size() > cacheSize;
+                }
+            };
+    }
+
+    /**
+     * Parse the given list of recipients, or get the result of a previous parsing of the same list.
+     */
+    public Result parse(final String recipients) {
+        synchronized (results) {
+            final Result result = results.get(recipients);
+            if (result != null) {
+                return result;
+            }
+        }
+
+        final Result result = scan(recipients);
+        synchronized (results) {
+            results.put(recipients, result);
+        }
+        return result;
+    }
+
+    /**
+     * Parse the given list of recipients, without caching.
+     */
+    public static Result scan(final String recipients) {
+        final List<String> valid = new ArrayList<>(4);
+        List<String> invalid = null;
+
+        final int length = recipients.length();
+        int pos = 0;
+        while (pos < length) {
+            while (pos < length && isSeparator(recipients.charAt(pos))) {
+                pos++;
+            }
+            final int start = pos;
+            while (pos < length && !isSeparator(recipients.charAt(pos))) {
+                pos++;
+            }
+            if (start == pos) {
+                continue;
+            }
+
+            // Accept a bracketed address (<john@doe.com>)
+            final boolean bracketed = pos - start > 2 && recipients.charAt(start) == '<' && recipients.charAt(pos - 1) == '>';
+            final int addressStart = bracketed ? start + 1 : start;
+            final int addressEnd = bracketed ? pos - 1 : pos;
+
+            if (isMailbox(recipients, addressStart, addressEnd)) {
+                if (!contains(valid, recipients, addressStart, addressEnd)) {
+                    valid.add(recipients.substring(addressStart, addressEnd));
+                }
+            } else {
+                if (invalid == null) {
+                    invalid = new ArrayList<>(1);
+                }
+                invalid.add(recipients.substring(start, pos));
+            }
+        }
+
+        return new Result(Collections.unmodifiableList(valid), invalid == null ? List.of() : Collections.unmodifiableList(invalid));
+    }
+
+    /**
+     * Check the syntax of a mailbox (<code>Local-part "@" ( Domain / address-literal )</code>), the local part being
+     * restricted to a dot-string since whitespaces are separators.
+     */
+    static boolean isMailbox(final String str, final int start, final int end) {
+        if (end - start > MAX_PATH_LENGTH) {
+            return false;
+        }
+        final int at = str.lastIndexOf('@', end - 1);
+        if (at < start) {
+            return false;
+        }
+        return isDotString(str, start, at) && (isDomain(str, at + 1, end) || isAddressLiteral(str, at + 1, end));
+    }
+
+    private static boolean isDotString(final String str, final int start, final int end) {
+        if (end == start || end - start > MAX_LOCAL_PART_LENGTH) {
+            return false;
+        }
+        boolean atomStart = true;
+        for (int i = start; i < end; i++) {
+            final char c = str.charAt(i);
+            if (c == '.') {
+                if (atomStart) {
+                    return false;
+                }
+                atomStart = true;
+            } else if (isAtext(c)) {
+                atomStart = false;
+            } else {
+                return false;
+            }
+        }
+        return !atomStart;
+    }
+
+    private static boolean isDomain(final String str, final int start, final int end) {
+        if (end == start || end - start > MAX_DOMAIN_LENGTH) {
+            return false;
+        }
+        int labelStart = start;
+        for (int i = start; i <= end; i++) {
+            if (i == end || str.charAt(i) == '.') {
+                // sub-domain = Let-dig [Ldh-str]
+                if (i == labelStart || str.charAt(labelStart) == '-' || str.charAt(i - 1) == '-') {
+                    return false;
+                }
+                labelStart = i + 1;
+            } else if (!isLetDig(str.charAt(i)) && str.charAt(i) != '-' && !isUtf8(str.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isAddressLiteral(final String str, final int start, final int end) {
+        if (end - start < 3 || str.charAt(start) != '[' || str.charAt(end - 1) != ']') {
+            return false;
+        }
+        for (int i = start + 1; i < end - 1; i++) {
+            final char c = str.charAt(i);
+            if (!isLetDig(c) && c != '.' && c != ':' && c != '-') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean contains(final List<String> addresses, final String str, final int start, final int end) {
+        for (String address : addresses) {
+            if (address.length() == end - start && address.regionMatches(true, 0, str, start, end - start)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSeparator(final char c) {
+        return c == ',' || c == ';' || Character.isWhitespace(c);
+    }
+
+    private static boolean isLetDig(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9');
+    }
+
+    private static boolean isAtext(final char c) {
+        return isLetDig(c) || isUtf8(c) || "!#$%&'*+-/=?^_`{|}~".indexOf(c) >= 0;
+    }
+
+    /**
+     * Internationalized addresses (RFC 6531) extend the syntax with any non ASCII character.
+     */
+    private static boolean isUtf8(final char c) {
+        return c >= 0x80;
+    }
+
+    /**
+     * @param valid the valid addresses, without duplicates
+     * @param invalid the entries which are not valid addresses
+     */
+    public record Result(List<String> valid, List<String> invalid) {}
+}
@@ -0,0 +1,252 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.client;
+
+import io.gravitee.notifier.email.configuration.NotificationPriority;
+import io.vertx.core.Vertx;
+import io.vertx.ext.mail.MailMessage;
+import io.vertx.ext.mail.MailResult;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Groups the messages sent to an SMTP endpoint into batches, flushed once they reach the max batch size or once the
+ * linger time has elapsed since the first message of the batch was submitted.
+ *
+ * The messages of a batch are sent one after the other, each one being sent once the previous one has been accepted by
+ * the server, so that the whole batch goes through a single pooled (and already authenticated) connection. They are
+ * sent by priority, so that the high priority messages of a batch don't wait behind its bulk messages. Each message
+ * is sent through the {@link MailSender} it has been submitted with, so that a batcher shared by several notifiers
+ * applies the rate limit, priority and relays of the notifier of each message.
+ *
+ * When coalescing is enabled, the messages of a batch sharing the same coalescing key (i.e. the same rendered sender,
+ * subject and body) and the same sender are merged into a single message sent to all their recipients, up to a max
+ * number of recipients. Recipients of a merged message are blind carbon copies unless merging them into To is asked.
+ *
+ * @author GraviteeSource Team
+ */
+public class MailBatcher {
+
+    private final Vertx vertx;
+
+    private final Options options;
+
+    private List<PendingMail> pending = new ArrayList<>();
+
+    private long timerId = -1;
+
+    public MailBatcher(final Vertx vertx, final Options options) {
+        this.vertx = vertx;
+        this.options = options;
+    }
+
+    /**
+     * Add a message to the current batch.
+     *
+     * @param message the message to send
+     * @param coalescingKey the key of the message content, or <code>null</code> if the message must never be merged
+     * @param priority the priority of the message within its batch
+     * @param mailSender the sender of the message
+     * @return a future completed once the message has been sent
+     */
+    public CompletableFuture<MailResult> submit(
+        final MailMessage message,
+        final Object coalescingKey,
+        final NotificationPriority priority,
+        final MailSender mailSender
+    ) {
+        final PendingMail mail = new PendingMail(message, coalescingKey, priority, mailSender, new CompletableFuture<>());
+        List<PendingMail> batch = null;
+        synchronized (this) {
+            pending.add(mail);
+            if (pending.size() >= options.maxBatchSize()) {
+                batch = drain();
+            } else if (timerId < 0) {
+                timerId = vertx.setTimer(options.lingerTime(), id -> flush());
+            }
+        }
+
+        if (batch != null) {
+            send(coalesce(batch), 0);
+        }
+        return mail.result();
+    }
+
+    /**
+     * Send the current batch without waiting for the linger time to elapse.
+     */
+    public void flush() {
+        final List<PendingMail> batch;
+        synchronized (this) {
+            batch = drain();
+        }
+        send(coalesce(batch), 0);
+    }
+
+    /**
+     * @return the number of messages waiting for the current batch to be sent
+     */
+    public synchronized int pending() {
+        return pending.size();
+    }
+
+    private List<PendingMail> drain() {
+        if (timerId >= 0) {
+            vertx.cancelTimer(timerId);
+            timerId = -1;
+        }
+        final List<PendingMail> batch = pending;
+        pending = new ArrayList<>();
+        return batch;
+    }
+
+    List<Group> coalesce(final List<PendingMail> batch) {
+        final List<Group> groups = new ArrayList<>(batch.size());
+        final Map<GroupKey, Group> openGroups = new HashMap<>();
+
+        for (final PendingMail mail : batch) {
+            if (!options.coalesce() || mail.coalescingKey() == null) {
+                groups.add(new Group(mail));
+                continue;
+            }
+
+            final GroupKey key = new GroupKey(mail.mailSender(), mail.priority(), mail.coalescingKey());
+            final Group group = openGroups.get(key);
+            if (group != null && group.accept(mail, options.maxRecipients())) {
+                continue;
+            }
+
+            final Group newGroup = new Group(mail);
+            openGroups.put(key, newGroup);
+            groups.add(newGroup);
+        }
+
+        // Stable, so that the messages of a same priority keep their order
+        groups.sort(Comparator.comparing(Group::priority));
+        return groups;
+    }
+
+    private void send(final List<Group> groups, final int index) {
+        if (index >= groups.size()) {
+            return;
+        }
+
+        final Group group = groups.get(index);
+        group.mailSender
+            .send(group.message(options.bcc()))
+            .whenComplete((mailResult, cause) -> {
+                if (cause == null) {
+                    group.results.forEach(result -> result.complete(mailResult));
+                } else {
+                    group.results.forEach(result -> result.completeExceptionally(cause));
+                }
+                send(groups, index + 1);
+            });
+    }
+
+    /**
+     * @param maxBatchSize the max number of messages of a batch
+     * @param lingerTime the max time (in ms) a message waits for its batch to be sent
+     * @param coalesce merge the messages having the same content
+     * @param bcc send merged messages to their recipients as blind carbon copies
+     * @param maxRecipients the max number of recipients of a merged message
+     */
+    public record Options(int maxBatchSize, long lingerTime, boolean coalesce, boolean bcc, int maxRecipients) {
+        public Options {
+            maxBatchSize = Math.max(1, maxBatchSize);
+            lingerTime = Math.max(1, lingerTime);
+            maxRecipients = Math.max(1, maxRecipients);
+        }
+    }
+
+    record PendingMail(
+        MailMessage message,
+        Object coalescingKey,
+        NotificationPriority priority,
+        MailSender mailSender,
+        CompletableFuture<MailResult> result
+    ) {}
+
+    private record GroupKey(MailSender mailSender, NotificationPriority priority, Object coalescingKey) {}
+
+    static class Group {
+
+        private final MailMessage message;
+        private final MailSender mailSender;
+        private final NotificationPriority priority;
+        private final Set<String> recipients;
+        private final List<CompletableFuture<MailResult>> results = new ArrayList<>(1);
+        private boolean merged;
+
+        private Group(final PendingMail mail) {
+            this.message = mail.message();
+            this.mailSender = mail.mailSender();
+            this.priority = mail.priority();
+            this.recipients = mail.message().getTo() == null ? new LinkedHashSet<>() : new LinkedHashSet<>(mail.message().getTo());
+            this.results.add(mail.result());
+        }
+
+        private boolean accept(final PendingMail mail, final int maxRecipients) {
+            final List<String> to = mail.message().getTo();
+            final Set<String> merge = new LinkedHashSet<>(recipients);
+            if (to != null) {
+                merge.addAll(to);
+            }
+            if (merge.size() > maxRecipients && merge.size() > recipients.size()) {
+                return false;
+            }
+
+            recipients.clear();
+            recipients.addAll(merge);
+            results.add(mail.result());
+            merged = true;
+            return true;
+        }
+
+        MailMessage message(final boolean bcc) {
+            if (!merged) {
+                return message;
+            }
+
+            final MailMessage mailMessage = new MailMessage(message);
+            if (bcc) {
+                mailMessage.setTo((List<String>) null);
+                mailMessage.setBcc(new ArrayList<>(recipients));
+            } else {
+                mailMessage.setTo(new ArrayList<>(recipients));
+            }
+            return mailMessage;
+        }
+
+        NotificationPriority priority() {
+            return priority;
+        }
+
+        Set<String> recipients() {
+            return recipients;
+        }
+
+        int size() {
+            return results.size();
+        }
+    }
+}
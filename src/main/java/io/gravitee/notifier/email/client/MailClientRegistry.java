@@ -0,0 +1,145 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.client;
+
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mail.MailClient;
+import io.vertx.ext.mail.MailConfig;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Registry of long-lived {@link MailClient}s shared by all the notifiers targeting the same SMTP endpoint with the same
+ * effective {@link MailConfig}. Each client keeps its own connection pool, so connections (and their TLS handshake and
+ * authentication) are reused across notifications instead of being established for every email.
+ *
+ * Clients are reference counted: a client is closed as soon as the last {@link Lease} on it has been released.
+ *
+ * @author GraviteeSource Team
+ */
+public class MailClientRegistry {
+
+    private static final MailClientRegistry INSTANCE = new MailClientRegistry();
+
+    private final Map<Key, Entry> clients = new HashMap<>();
+
+    public static MailClientRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get a lease on the client matching the given configuration, creating it if none exists yet.
+     *
+     * @param vertx the Vert.x instance the client is bound to
+     * @param mailConfig the effective mail configuration
+     * @return a lease which must be released once the client is no longer needed
+     */
+    public synchronized Lease acquire(final Vertx vertx, final MailConfig mailConfig) {
+        final Key key = new Key(vertx, mailConfig.toJson());
+        final Entry entry = clients.computeIfAbsent(key, k -> new Entry(MailClient.create(vertx, new MailConfig(mailConfig))));
+        entry.references++;
+        return new Lease(key, entry, mailConfig);
+    }
+
+    synchronized int size() {
+        return clients.size();
+    }
+
+    private synchronized void release(final Key key) {
+        final Entry entry = clients.get(key);
+        if (entry != null && --entry.references <= 0) {
+            clients.remove(key);
+            entry.client.close();
+        }
+    }
+
+    private record Key(Vertx vertx, JsonObject mailConfig) {}
+
+    private static class Entry {
+
+        private final MailClient client;
+        private int references;
+        private final Map<MailBatcher.Options, MailBatcher> batchers = new ConcurrentHashMap<>();
+
+        private Entry(final MailClient client) {
+            this.client = client;
+        }
+    }
+
+    public class Lease {
+
+        private final Key key;
+        private final Entry entry;
+        private final MailConfig mailConfig;
+        private boolean released;
+
+        private Lease(final Key key, final Entry entry, final MailConfig mailConfig) {
+            this.key = key;
+            this.entry = entry;
+            this.mailConfig = mailConfig;
+        }
+
+        public MailClient client() {
+            return entry.client;
+        }
+
+        /**
+         * Get the batcher of the client for the given batch settings, shared by all the leases on it using the same
+         * settings.
+         */
+        public MailBatcher batcher(final MailBatcher.Options options) {
+            return batcher(options, batcher -> {});
+        }
+
+        /**
+         * Get the batcher of the client for the given batch settings, see {@link #batcher(MailBatcher.Options)}.
+         *
+         * @param created called with the batcher when it is created, rather than shared with previous leases
+         */
+        public MailBatcher batcher(final MailBatcher.Options options, final Consumer<MailBatcher> created) {
+            final MailBatcher batcher = entry.batchers.get(options);
+            if (batcher != null) {
+                return batcher;
+            }
+            return entry.batchers.computeIfAbsent(
+                options,
+                o -> {
+                    final MailBatcher newBatcher = new MailBatcher(key.vertx(), o);
+                    created.accept(newBatcher);
+                    return newBatcher;
+                }
+            );
+        }
+
+        /**
+         * Check whether the lease is on a client for the given configuration. The configuration the lease has been
+         * acquired with is assumed unchanged, which avoids serializing it again.
+         */
+        public boolean matches(final Vertx vertx, final MailConfig mailConfig) {
+            return key.vertx() == vertx && (mailConfig == this.mailConfig || key.mailConfig().equals(mailConfig.toJson()));
+        }
+
+        public synchronized void release() {
+            if (!released) {
+                released = true;
+                MailClientRegistry.this.release(key);
+            }
+        }
+    }
+}
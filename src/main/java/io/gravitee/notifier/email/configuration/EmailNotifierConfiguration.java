@@ -17,6 +17,7 @@ package io.gravitee.notifier.email.configuration;
 
 import io.gravitee.notifier.api.NotifierConfiguration;
 import java.io.Serializable;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -46,6 +47,30 @@ public class EmailNotifierConfiguration implements NotifierConfiguration, Serial
      * */
     private Set<String> authMethods;
 
+    /**
+     * Max number of emails sent per second to the SMTP server, 0 for no limit.
+     */
+    private int rateLimit;
+
+    /**
+     * Max number of emails sent at the same time to the SMTP server, 0 for no limit.
+     */
+    private int maxConcurrentSends;
+
+    /**
+     * Max number of emails waiting for the above limits.
+     */
+    private int maxQueuedSends = 1000;
+
+    private QueueOverflowPolicy queueOverflowPolicy = QueueOverflowPolicy.REJECT;
+
+    /**
+     * Relays used along with the main host, when it is unavailable or to spread the load.
+     */
+    private List<SmtpRelay> relays;
+
+    private RelayStrategy relayStrategy = RelayStrategy.FAILOVER;
+
     public String getHost() {
         return host;
     }
@@ -149,4 +174,52 @@ public class EmailNotifierConfiguration implements NotifierConfiguration, Serial
     public void setAuthMethods(Set<String> authMethods) {
         this.authMethods = authMethods;
     }
+
+    public int getRateLimit() {
+        return rateLimit;
+    }
+
+    public void setRateLimit(int rateLimit) {
+        this.rateLimit = rateLimit;
+    }
+
+    public int getMaxConcurrentSends() {
+        return maxConcurrentSends;
+    }
+
+    public void setMaxConcurrentSends(int maxConcurrentSends) {
+        this.maxConcurrentSends = maxConcurrentSends;
+    }
+
+    public int getMaxQueuedSends() {
+        return maxQueuedSends;
+    }
+
+    public void setMaxQueuedSends(int maxQueuedSends) {
+        this.maxQueuedSends = maxQueuedSends;
+    }
+
+    public QueueOverflowPolicy getQueueOverflowPolicy() {
+        return queueOverflowPolicy;
+    }
+
+    public void setQueueOverflowPolicy(QueueOverflowPolicy queueOverflowPolicy) {
+        this.queueOverflowPolicy = queueOverflowPolicy;
+    }
+
+    public List<SmtpRelay> getRelays() {
+        return relays;
+    }
+
+    public void setRelays(List<SmtpRelay> relays) {
+        this.relays = relays;
+    }
+
+    public RelayStrategy getRelayStrategy() {
+        return relayStrategy;
+    }
+
+    public void setRelayStrategy(RelayStrategy relayStrategy) {
+        this.relayStrategy = relayStrategy;
+    }
 }
@@ -0,0 +1,38 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.configuration;
+
+/**
+ * Priority class of a notification, deciding in which order queued emails are sent to a saturated SMTP endpoint.
+ *
+ * @author GraviteeSource Team
+ */
+public enum NotificationPriority {
+    /**
+     * Critical alerts, sent first and able to use the connections reserved to them.
+     */
+    HIGH,
+
+    /**
+     * Default class of the notifications.
+     */
+    NORMAL,
+
+    /**
+     * Bulk notifications, sent once there is no other email waiting and dropped first when the queue is full.
+     */
+    LOW
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.configuration;
+
+/**
+ * How emails are spread over the SMTP relays of a notifier.
+ *
+ * @author GraviteeSource Team
+ */
+public enum RelayStrategy {
+    /**
+     * Send to the first available relay, in the configured order.
+     */
+    FAILOVER,
+
+    /**
+     * Send to the available relay with the lowest load, weighted by the latency and the weight of the relays.
+     */
+    LOAD_BALANCING
+}
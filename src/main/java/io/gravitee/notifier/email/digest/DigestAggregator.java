@@ -0,0 +1,175 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.digest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Aggregates items per key (usually per recipient) into digests, flushed when they reach a max size or a max delay
+ * after their first item.
+ *
+ * There is no global lock: buffers live in a concurrent map and each buffer is only locked while an item is added to
+ * it or while it is closed. A closed buffer is removed from the map, the next item of its key starting a new one.
+ *
+ * @author GraviteeSource Team
+ */
+public class DigestAggregator<T> {
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "gio-email-notifier-digest");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Options options;
+
+    private final Consumer<Digest<T>> flusher;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Buffer<T>> buffers = new ConcurrentHashMap<>();
+
+    /**
+     * @param flusher called with each digest, on the thread completing it: it must not block
+     */
+    public DigestAggregator(final Options options, final Consumer<Digest<T>> flusher) {
+        this(options, flusher, SCHEDULER);
+    }
+
+    DigestAggregator(final Options options, final Consumer<Digest<T>> flusher, final ScheduledExecutorService scheduler) {
+        this.options = options;
+        this.flusher = flusher;
+        this.scheduler = scheduler;
+    }
+
+    public void add(final String key, final T item) {
+        while (true) {
+            final Buffer<T> buffer = buffers.computeIfAbsent(key, this::newBuffer);
+            final int size = buffer.offer(item);
+            if (size > 0) {
+                if (size >= options.maxSize()) {
+                    flush(buffer);
+                }
+                return;
+            }
+            // The buffer has been closed in the meantime
+            buffers.remove(key, buffer);
+        }
+    }
+
+    /**
+     * Flush all the pending digests.
+     */
+    public void flushAll() {
+        buffers.values().forEach(this::flush);
+    }
+
+    /**
+     * @return the number of items waiting to be flushed
+     */
+    public int pending() {
+        int pending = 0;
+        for (Buffer<T> buffer : buffers.values()) {
+            pending += buffer.size();
+        }
+        return pending;
+    }
+
+    private Buffer<T> newBuffer(final String key) {
+        final Buffer<T> buffer = new Buffer<>(key);
+        buffer.timer = scheduler.schedule(() -> flush(buffer), options.maxDelay(), TimeUnit.MILLISECONDS);
+        return buffer;
+    }
+
+    private void flush(final Buffer<T> buffer) {
+        final List<T> items = buffer.close();
+        if (items == null) {
+            return;
+        }
+        buffers.remove(buffer.key, buffer);
+        if (buffer.timer != null) {
+            buffer.timer.cancel(false);
+        }
+        if (!items.isEmpty()) {
+            flusher.accept(new Digest<>(buffer.key, items));
+        }
+    }
+
+    private static class Buffer<T> {
+
+        private final String key;
+        private List<T> items = new ArrayList<>();
+        private boolean closed;
+        private volatile ScheduledFuture<?> timer;
+
+        private Buffer(final String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return the size of the buffer with the item, or 0 if the buffer is closed
+         */
+        private synchronized int offer(final T item) {
+            if (closed) {
+                return 0;
+            }
+            items.add(item);
+            return items.size();
+        }
+
+        /**
+         * @return the items of the buffer, or <code>null</code> if it was already closed
+         */
+        private synchronized List<T> close() {
+            if (closed) {
+                return null;
+            }
+            closed = true;
+            final List<T> closedItems = items;
+            items = null;
+            return closedItems;
+        }
+
+        private synchronized int size() {
+            return closed ? 0 : items.size();
+        }
+    }
+
+    /**
+     * @param key the key of the items, usually the recipient
+     * @param items the items, in the order they were added
+     */
+    public record Digest<T>(String key, List<T> items) {}
+
+    /**
+     * @param maxSize the number of items after which a digest is flushed
+     * @param maxDelay the time in milliseconds after the first item of a digest after which it is flushed
+     */
+    public record Options(int maxSize, long maxDelay) {
+        public Options {
+            maxSize = Math.max(1, maxSize);
+            maxDelay = Math.max(0, maxDelay);
+        }
+    }
+}
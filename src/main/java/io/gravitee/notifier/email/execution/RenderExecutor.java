@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.execution;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executor dedicated to the CPU and blocking I/O work of the notifier (template rendering, HTML processing and
+ * attachments loading), keeping it off the Vert.x event loops.
+ *
+ * Virtual threads are used when the JVM supports them, the number of tasks running at the same time being bounded by a
+ * semaphore. Otherwise, a fixed pool of daemon threads is used. In both cases, the number of tasks waiting to run is
+ * bounded too: tasks submitted beyond it are rejected with a {@link RejectedExecutionException}.
+ *
+ * @author GraviteeSource Team
+ */
+public final class RenderExecutor implements Executor {
+
+    private static volatile RenderExecutor shared;
+
+    private final Executor delegate;
+
+    private final boolean virtualThreads;
+
+    private RenderExecutor(final Executor delegate, final boolean virtualThreads) {
+        this.delegate = delegate;
+        this.virtualThreads = virtualThreads;
+    }
+
+    /**
+     * Get the executor shared by all the notifiers, creating it with the given limits if needed. The limits of the
+     * first caller apply: the limits given by the next ones are ignored.
+     *
+     * @param maxConcurrency the max number of tasks running at the same time
+     * @param maxQueued the max number of tasks waiting to run
+     */
+    public static RenderExecutor shared(final int maxConcurrency, final int maxQueued) {
+        RenderExecutor executor = shared;
+        if (executor == null) {
+            synchronized (RenderExecutor.class) {
+                executor = shared;
+                if (executor == null) {
+                    executor = create(maxConcurrency, maxQueued);
+                    shared = executor;
+                }
+            }
+        }
+        return executor;
+    }
+
+    static RenderExecutor create(final int maxConcurrency, final int maxQueued) {
+        final int concurrency = Math.max(1, maxConcurrency);
+        final int queued = Math.max(0, maxQueued);
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            final ExecutorService virtualThreadExecutor = (ExecutorService) factory.invoke(null);
+            final Semaphore permits = new Semaphore(concurrency);
+            final AtomicInteger pending = new AtomicInteger();
+            return new RenderExecutor(
+                command -> {
+                    if (pending.incrementAndGet() > concurrency + queued) {
+                        pending.decrementAndGet();
+                        throw new RejectedExecutionException("Email rendering rejected, too many emails are waiting to be rendered");
+                    }
+                    try {
+                        virtualThreadExecutor.execute(() -> {
+                            permits.acquireUninterruptibly();
+                            try {
+                                command.run();
+                            } finally {
+                                permits.release();
+                                pending.decrementAndGet();
+                            }
+                        });
+                    } catch (final RejectedExecutionException ex) {
+                        pending.decrementAndGet();
+                        throw ex;
+                    }
+                },
+                true
+            );
+        } catch (ReflectiveOperationException ex) {
+            final AtomicInteger counter = new AtomicInteger();
+            final ThreadFactory threadFactory = runnable -> {
+                final Thread thread = new Thread(runnable, "gio-email-notifier-render-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            };
+            return new RenderExecutor(
+                new ThreadPoolExecutor(
+                    concurrency,
+                    concurrency,
+                    60,
+                    TimeUnit.SECONDS,
+                    queued > 0 ? new ArrayBlockingQueue<>(queued) : new SynchronousQueue<>(),
+                    threadFactory,
+                    new ThreadPoolExecutor.AbortPolicy()
+                ),
+                false
+            );
+        }
+    }
+
+    @Override
+    public void execute(final Runnable command) {
+        delegate.execute(command);
+    }
+
+    public boolean isVirtualThreads() {
+        return virtualThreads;
+    }
+}
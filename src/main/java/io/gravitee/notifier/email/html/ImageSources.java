@@ -0,0 +1,178 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.html;
+
+import io.gravitee.notifier.email.template.PooledWriter;
+
+/**
+ * Single pass rewriter of the <code>src</code> attribute of the <code>&lt;img&gt;</code> tags of an HTML document.
+ *
+ * Contrary to a DOM parser, the document is never materialized: it is scanned once and everything but the rewritten
+ * attribute values is copied as-is to the output.
+ *
+ * @author GraviteeSource Team
+ */
+public final class ImageSources {
+
+    private static final String IMG_TAG = "<img";
+
+    private ImageSources() {}
+
+    /**
+     * Fast check allowing to skip the HTML processing when the document does not contain any image.
+     */
+    public static boolean hasImage(final String html) {
+        return indexOfIgnoreCase(html, IMG_TAG, 0) >= 0;
+    }
+
+    /**
+     * Rewrite the <code>src</code> attribute of every image of the document.
+     *
+     * @param html the HTML document
+     * @param rewriter called with the raw value of each <code>src</code> attribute, returns the new value or
+     *                 <code>null</code> to keep the attribute unchanged
+     * @return the rewritten document
+     */
+    public static String rewrite(final String html, final Rewriter rewriter) throws Exception {
+        final int tagStart = nextImageTag(html, 0);
+        if (tagStart < 0) {
+            return html;
+        }
+
+        try (PooledWriter out = PooledWriter.acquire()) {
+            return rewrite(html, tagStart, rewriter, out);
+        }
+    }
+
+    private static String rewrite(final String html, final int firstTag, final Rewriter rewriter, final PooledWriter out) throws Exception {
+        int tagStart = firstTag;
+        int copied = 0;
+
+        while (tagStart >= 0) {
+            int pos = tagStart + IMG_TAG.length();
+            final int length = html.length();
+
+            while (pos < length && html.charAt(pos) != '>') {
+                final char c = html.charAt(pos);
+                if (Character.isWhitespace(c) || c == '/') {
+                    pos++;
+                    continue;
+                }
+
+                // Attribute name
+                final int nameStart = pos;
+                while (pos < length && !isNameDelimiter(html.charAt(pos))) {
+                    pos++;
+                }
+                final int nameEnd = pos;
+
+                while (pos < length && Character.isWhitespace(html.charAt(pos))) {
+                    pos++;
+                }
+                if (pos >= length || html.charAt(pos) != '=') {
+                    continue;
+                }
+                pos++;
+                while (pos < length && Character.isWhitespace(html.charAt(pos))) {
+                    pos++;
+                }
+
+                // Attribute value, quoted or not
+                final int valueStart;
+                final int valueEnd;
+                final boolean quoted = pos < length && (html.charAt(pos) == '"' || html.charAt(pos) == '\'');
+                if (quoted) {
+                    final char quote = html.charAt(pos);
+                    valueStart = pos + 1;
+                    final int closingQuote = html.indexOf(quote, valueStart);
+                    valueEnd = closingQuote < 0 ? length : closingQuote;
+                    pos = closingQuote < 0 ? length : closingQuote + 1;
+                } else {
+                    valueStart = pos;
+                    while (pos < length && !Character.isWhitespace(html.charAt(pos)) && html.charAt(pos) != '>') {
+                        pos++;
+                    }
+                    valueEnd = pos;
+                }
+
+                if (nameEnd - nameStart == 3 && html.regionMatches(true, nameStart, "src", 0, 3)) {
+                    final String replacement = rewriter.rewrite(html.substring(valueStart, valueEnd));
+                    if (replacement != null) {
+                        out.append(html, copied, valueStart);
+                        if (quoted) {
+                            out.append(replacement);
+                        } else {
+                            out.append('"').append(replacement).append('"');
+                        }
+                        copied = valueEnd;
+                    }
+                }
+            }
+
+            tagStart = nextImageTag(html, pos);
+        }
+
+        return out.append(html, copied, html.length()).toString();
+    }
+
+    private static int nextImageTag(final String html, final int from) {
+        int index = indexOfIgnoreCase(html, IMG_TAG, from);
+        while (index >= 0) {
+            final int comment = html.lastIndexOf("<!--", index);
+            if (comment >= from) {
+                // Skip images in comments
+                final int commentEnd = html.indexOf("-->", comment);
+                if (commentEnd < 0) {
+                    return -1;
+                }
+                if (commentEnd > index) {
+                    index = indexOfIgnoreCase(html, IMG_TAG, commentEnd + 3);
+                    continue;
+                }
+            }
+
+            final int next = index + IMG_TAG.length();
+            if (next < html.length() && isTagNameEnd(html.charAt(next))) {
+                return index;
+            }
+            index = indexOfIgnoreCase(html, IMG_TAG, next);
+        }
+        return -1;
+    }
+
+    private static boolean isTagNameEnd(final char c) {
+        return Character.isWhitespace(c) || c == '/' || c == '>';
+    }
+
+    private static boolean isNameDelimiter(final char c) {
+        return Character.isWhitespace(c) || c == '=' || c == '>' || c == '/';
+    }
+
+    private static int indexOfIgnoreCase(final String str, final String search, final int from) {
+        final int max = str.length() - search.length();
+        for (int i = Math.max(from, 0); i <= max; i++) {
+            if (str.regionMatches(true, i, search, 0, search.length())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @FunctionalInterface
+    public interface Rewriter {
+        String rewrite(String source) throws Exception;
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.metrics;
+
+import java.util.function.Supplier;
+
+/**
+ * Metrics of the email notifier hot path. Every metric is tagged with the SMTP host the email is sent to.
+ *
+ * Implementations are discovered with the {@link java.util.ServiceLoader} mechanism, the first one found being used. When none is
+ * available, metrics are not recorded.
+ *
+ * @author GraviteeSource Team
+ */
+public interface EmailNotifierMetrics {
+    EmailNotifierMetrics NOOP = new EmailNotifierMetrics() {};
+
+    /**
+     * @return the first implementation available, or {@link #NOOP}
+     */
+    static EmailNotifierMetrics load() {
+        return EmailNotifierMetricsLoader.INSTANCE;
+    }
+
+    /**
+     * Time spent rendering the templates of an email (recipients, sender, subject and body).
+     */
+    default void templateRendered(String host, long durationNanos) {}
+
+    /**
+     * Time spent rewriting the images of an email body.
+     */
+    default void htmlProcessed(String host, long durationNanos) {}
+
+    /**
+     * Size of an attachment loaded in an email.
+     */
+    default void attachmentLoaded(String host, long bytes) {}
+
+    /**
+     * Time between the submission of an email to the SMTP client and its acceptance (or rejection) by the server,
+     * including the time spent waiting for and establishing a connection.
+     *
+     * @param replyCode the SMTP reply code, or <code>null</code> if the send failed before any reply
+     */
+    default void mailSent(String host, long durationNanos, boolean success, String replyCode) {}
+
+    /**
+     * An email has not been sent since an identical one has already been sent within the suppression window.
+     */
+    default void mailSuppressed(String host) {}
+
+    /**
+     * Register a gauge reporting the number of emails waiting in a queue.
+     *
+     * @param queue the name of the queue (<code>limiter</code>, <code>batch</code>, <code>outbox</code>...)
+     */
+    default void queueRegistered(String host, String queue, Supplier<Number> depth) {}
+
+    /**
+     * Register a counter reporting the number of emails which overflowed the limits of an SMTP server.
+     *
+     * @param overflow the kind of overflow: <code>throttled</code> when delayed by the rate limit, <code>rejected</code>
+     *     when the queue was full
+     */
+    default void overflowRegistered(String host, String overflow, Supplier<Number> count) {}
+}
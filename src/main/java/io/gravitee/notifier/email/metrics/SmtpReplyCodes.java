@@ -0,0 +1,50 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.metrics;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Extracts the SMTP reply code from the errors reported by the mail client, whose messages embed the server reply.
+ *
+ * @author GraviteeSource Team
+ */
+public final class SmtpReplyCodes {
+
+    public static final String OK = "250";
+
+    private static final Pattern REPLY_CODE = Pattern.compile("(?<![\\w.:/-])([245][0-5][0-9])(?=[ -]|$)");
+
+    private SmtpReplyCodes() {}
+
+    /**
+     * @return the first SMTP reply code found in the error messages, or <code>null</code> if none
+     */
+    public static String of(final Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            if (current.getMessage() != null) {
+                final Matcher matcher = REPLY_CODE.matcher(current.getMessage());
+                if (matcher.find()) {
+                    return matcher.group(1);
+                }
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return null;
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.outbox;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Append-only journal of records, backed by a memory-mapped file so that appending a record never blocks on disk I/O
+ * while records survive a restart of the process.
+ *
+ * The file starts with a header holding the read and write positions, followed by the records, each one being prefixed
+ * by its length. Consumed records are reclaimed by compacting the pending ones at the start of the file once there is
+ * no more room at its end.
+ *
+ * @author GraviteeSource Team
+ */
+public class MailJournal implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailJournal.class);
+
+    private static final int MAGIC = 0x4d4a524e;
+
+    static final int HEADER_SIZE = 12;
+
+    private final FileChannel channel;
+
+    private final MappedByteBuffer buffer;
+
+    private final int capacity;
+
+    private int readPosition;
+
+    private int writePosition;
+
+    private int count;
+
+    public MailJournal(final Path file, final int capacity) throws IOException {
+        this.capacity = capacity;
+        this.channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+
+        readPosition = buffer.getInt(4);
+        writePosition = buffer.getInt(8);
+        if (buffer.getInt(0) != MAGIC || readPosition < HEADER_SIZE || readPosition > writePosition || writePosition > capacity) {
+            if (buffer.getInt(0) == MAGIC) {
+                LOGGER.warn("Email outbox journal {} is corrupted and has been reset", file);
+            }
+            buffer.putInt(0, MAGIC);
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+            storePositions();
+        }
+
+        for (int position = readPosition; position < writePosition; position += Integer.BYTES + buffer.getInt(position)) {
+            count++;
+        }
+    }
+
+    /**
+     * Append a record to the journal.
+     *
+     * @param record the record to append
+     * @return <code>false</code> if the journal is full
+     */
+    public synchronized boolean append(final byte[] record) {
+        final int size = Integer.BYTES + record.length;
+        if (writePosition + size > capacity) {
+            compact();
+            if (writePosition + size > capacity) {
+                return false;
+            }
+        }
+
+        buffer.putInt(writePosition, record.length);
+        buffer.put(writePosition + Integer.BYTES, record);
+        writePosition += size;
+        count++;
+        storePositions();
+        return true;
+    }
+
+    /**
+     * @return the oldest record of the journal, or <code>null</code> if the journal is empty
+     */
+    public synchronized byte[] peek() {
+        if (readPosition == writePosition) {
+            return null;
+        }
+        final byte[] record = new byte[buffer.getInt(readPosition)];
+        buffer.get(readPosition + Integer.BYTES, record);
+        return record;
+    }
+
+    /**
+     * Remove the oldest record of the journal.
+     */
+    public synchronized void remove() {
+        if (readPosition == writePosition) {
+            return;
+        }
+        readPosition += Integer.BYTES + buffer.getInt(readPosition);
+        count--;
+        if (readPosition == writePosition) {
+            readPosition = HEADER_SIZE;
+            writePosition = HEADER_SIZE;
+        }
+        storePositions();
+    }
+
+    public synchronized boolean isEmpty() {
+        return readPosition == writePosition;
+    }
+
+    /**
+     * @return the number of pending records
+     */
+    public synchronized int count() {
+        return count;
+    }
+
+    /**
+     * @return the number of bytes used by the pending records
+     */
+    public synchronized int size() {
+        return writePosition - readPosition;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        channel.close();
+    }
+
+    private void compact() {
+        if (readPosition == HEADER_SIZE) {
+            return;
+        }
+        final byte[] pending = new byte[writePosition - readPosition];
+        buffer.get(readPosition, pending);
+        buffer.put(HEADER_SIZE, pending);
+        readPosition = HEADER_SIZE;
+        writePosition = HEADER_SIZE + pending.length;
+        storePositions();
+    }
+
+    private void storePositions() {
+        buffer.putInt(4, readPosition);
+        buffer.putInt(8, writePosition);
+    }
+}
@@ -0,0 +1,360 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.outbox;
+
+import io.gravitee.notifier.email.client.MailSender;
+import io.gravitee.notifier.email.configuration.NotificationPriority;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mail.MailMessage;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Local outbox of the messages to send to an SMTP endpoint. Messages are appended to a {@link MailJournal} and
+ * delivered in the background, in order, with an exponential backoff between attempts. Messages still failing after the
+ * max number of attempts are moved to a dead letter file, next to the journal. Each message is journaled along with its
+ * priority, and delivered through the sender of that priority, and with its suppression fingerprint, forgotten once the
+ * message is moved to the dead letters.
+ *
+ * Messages are delivered through a {@link Route} holding its own leases on the mail clients, so that they keep being
+ * delivered once the notifiers which offered them are destroyed. An outbox is closed once all the references on it
+ * have been released and its journal has been drained.
+ *
+ * @author GraviteeSource Team
+ */
+public class MailOutbox {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MailOutbox.class);
+
+    private static final Map<Path, MailOutbox> OUTBOXES = new ConcurrentHashMap<>();
+
+    private final Vertx vertx;
+
+    private final Path file;
+
+    private final MailJournal journal;
+
+    private final Path deadLetterFile;
+
+    private final Options options;
+
+    private final List<Route> retiredRoutes = new ArrayList<>();
+
+    private Route route;
+
+    private Object routeKey;
+
+    private int references;
+
+    private boolean closed;
+
+    private boolean draining;
+
+    private int attempts;
+
+    MailOutbox(final Vertx vertx, final Path file, final MailJournal journal, final Path deadLetterFile, final Options options) {
+        this.vertx = vertx;
+        this.file = file;
+        this.journal = journal;
+        this.deadLetterFile = deadLetterFile;
+        this.options = options;
+    }
+
+    /**
+     * Get a reference on the outbox stored in the given file, opening it if needed, and start delivering the messages
+     * left in its journal.
+     *
+     * @param routeKey the key of the route, see {@link #reroute(Object, Supplier)}
+     * @param route creates the route of the messages, if the outbox has no route with the same key
+     * @return the outbox, whose reference must be released once no longer used
+     */
+    public static MailOutbox open(
+        final Vertx vertx,
+        final Path file,
+        final Options options,
+        final Object routeKey,
+        final Supplier<Route> route
+    ) {
+        return open(vertx, file, options, routeKey, route, outbox -> {});
+    }
+
+    /**
+     * Get a reference on the outbox stored in the given file, see {@link #open(Vertx, Path, Options, Object, Supplier)}.
+     *
+     * @param created called with the outbox when it is opened, rather than shared with previous references
+     */
+    public static MailOutbox open(
+        final Vertx vertx,
+        final Path file,
+        final Options options,
+        final Object routeKey,
+        final Supplier<Route> route,
+        final Consumer<MailOutbox> created
+    ) {
+        while (true) {
+            final MailOutbox outbox = OUTBOXES.computeIfAbsent(file, path -> create(vertx, path, options, created));
+            if (outbox.retain()) {
+                outbox.reroute(routeKey, route);
+                return outbox;
+            }
+            // The outbox has been closed in the meantime
+            OUTBOXES.remove(file, outbox);
+        }
+    }
+
+    private static MailOutbox create(final Vertx vertx, final Path file, final Options options, final Consumer<MailOutbox> created) {
+        try {
+            Files.createDirectories(file.getParent());
+            final MailJournal journal = new MailJournal(file, options.capacity());
+            final MailOutbox outbox = new MailOutbox(vertx, file, journal, Path.of(file + ".dead"), options);
+            created.accept(outbox);
+            return outbox;
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to open email outbox " + file, ex);
+        }
+    }
+
+    private synchronized boolean retain() {
+        if (closed) {
+            return false;
+        }
+        references++;
+        return true;
+    }
+
+    /**
+     * Release a reference on the outbox. The outbox is closed once it has no more references and no more messages to
+     * deliver; pending messages are kept in its journal and delivered once reopened.
+     */
+    public synchronized void release() {
+        if (--references > 0 || draining) {
+            return;
+        }
+        close();
+    }
+
+    /**
+     * Deliver the messages through a new route, unless the current route has the same key. The previous route is
+     * released once its message being delivered, if any, has been sent.
+     *
+     * @param key the key of the route, equal to the key of another route if they deliver the messages the same way
+     * @param route creates the new route
+     */
+    public void reroute(final Object key, final Supplier<Route> route) {
+        synchronized (this) {
+            if (closed || key.equals(routeKey)) {
+                return;
+            }
+            if (this.route != null) {
+                retiredRoutes.add(this.route);
+            }
+            this.route = route.get();
+            this.routeKey = key;
+            if (!draining) {
+                releaseRetiredRoutes();
+            }
+        }
+        drain();
+    }
+
+    /**
+     * Append a message to the outbox, to be delivered in the background.
+     *
+     * @param message the message to deliver
+     * @param priority the priority of the message
+     * @param fingerprint the suppression fingerprint of the message, or <code>null</code> if it is not suppressed
+     * @return <code>false</code> if the outbox is full or closed
+     */
+    public boolean offer(final MailMessage message, final NotificationPriority priority, final String fingerprint) {
+        final JsonObject record = new JsonObject().put("priority", priority.name()).put("message", message.toJson());
+        if (fingerprint != null) {
+            record.put("fingerprint", fingerprint);
+        }
+        synchronized (this) {
+            // Once closed, an appended message would only be delivered when the outbox is opened again
+            if (closed || !journal.append(record.toBuffer().getBytes())) {
+                return false;
+            }
+        }
+        drain();
+        return true;
+    }
+
+    /**
+     * @return the file of the journal
+     */
+    public Path file() {
+        return file;
+    }
+
+    /**
+     * @return the number of messages waiting to be delivered
+     */
+    public int size() {
+        return journal.count();
+    }
+
+    private void drain() {
+        synchronized (this) {
+            if (draining || closed || route == null) {
+                return;
+            }
+            draining = true;
+        }
+        deliverNext();
+    }
+
+    private void deliverNext() {
+        final byte[] record;
+        final Route current;
+        synchronized (this) {
+            releaseRetiredRoutes();
+            record = journal.peek();
+            if (record == null) {
+                draining = false;
+                if (references <= 0) {
+                    close();
+                }
+                return;
+            }
+            current = route;
+        }
+
+        final MailMessage message;
+        final NotificationPriority priority;
+        final String fingerprint;
+        try {
+            final JsonObject json = new JsonObject(Buffer.buffer(record));
+            // Messages journaled without their priority are the message itself
+            final JsonObject wrapped = json.getJsonObject("message");
+            message = new MailMessage(wrapped == null ? json : wrapped);
+            priority = wrapped == null ? NotificationPriority.NORMAL : NotificationPriority.valueOf(json.getString("priority"));
+            fingerprint = wrapped == null ? null : json.getString("fingerprint");
+        } catch (Exception ex) {
+            LOGGER.error("Unable to read message from the email outbox, moving it to the dead letters", ex);
+            deadLetter(record, ex);
+            deliverNext();
+            return;
+        }
+
+        current
+            .sender(priority)
+            .send(message)
+            .whenComplete((result, cause) -> {
+                if (cause == null) {
+                    LOGGER.debug("Email {} has been send successfully!", result.getMessageID());
+                    attempts = 0;
+                    journal.remove();
+                    deliverNext();
+                } else if (++attempts >= options.maxAttempts()) {
+                    LOGGER.error("An error occurs while sending email, giving up after {} attempts", attempts, cause);
+                    deadLetter(record, cause);
+                    if (fingerprint != null) {
+                        current.deadLettered(fingerprint);
+                    }
+                    deliverNext();
+                } else {
+                    final long delay = backoff(attempts);
+                    LOGGER.warn("An error occurs while sending email (attempt {}), retrying in {} ms", attempts, delay, cause);
+                    vertx.setTimer(delay, id -> deliverNext());
+                }
+            });
+    }
+
+    private void releaseRetiredRoutes() {
+        retiredRoutes.forEach(Route::release);
+        retiredRoutes.clear();
+    }
+
+    private void close() {
+        closed = true;
+        OUTBOXES.remove(file, this);
+        releaseRetiredRoutes();
+        if (route != null) {
+            route.release();
+        }
+        try {
+            journal.close();
+        } catch (IOException ex) {
+            LOGGER.warn("Unable to close email outbox {}", file, ex);
+        }
+    }
+
+    long backoff(final int attempt) {
+        final long delay = options.initialBackoff() << Math.min(attempt - 1, 30);
+        return delay <= 0 ? options.maxBackoff() : Math.min(delay, options.maxBackoff());
+    }
+
+    private void deadLetter(final byte[] record, final Throwable cause) {
+        attempts = 0;
+        journal.remove();
+
+        final JsonObject deadLetter = new JsonObject()
+            .put("timestamp", System.currentTimeMillis())
+            .put("error", String.valueOf(cause.getMessage()))
+            .put("message", new String(record, StandardCharsets.UTF_8));
+        vertx.executeBlocking(() ->
+            Files.write(
+                deadLetterFile,
+                (deadLetter.encode() + '\n').getBytes(StandardCharsets.UTF_8),
+                StandardOpenOption.CREATE,
+                StandardOpenOption.APPEND
+            )
+        ).onFailure(ex -> LOGGER.error("Unable to write email to the dead letter file {}", deadLetterFile, ex));
+    }
+
+    /**
+     * @param capacity the size (in bytes) of the journal
+     * @param maxAttempts the max number of delivery attempts of a message
+     * @param initialBackoff the delay (in ms) before the first retry, doubled at each attempt
+     * @param maxBackoff the max delay (in ms) between two attempts
+     */
+    public record Options(int capacity, int maxAttempts, long initialBackoff, long maxBackoff) {}
+
+    /**
+     * The senders delivering the messages of an outbox, through leases of their own on the mail clients.
+     */
+    public interface Route {
+        /**
+         * @return the sender of the messages having the given priority
+         */
+        MailSender sender(NotificationPriority priority);
+
+        /**
+         * A message could not be delivered and has been moved to the dead letters: its suppression fingerprint must
+         * be forgotten, so that identical messages are sent again.
+         */
+        void deadLettered(String fingerprint);
+
+        /**
+         * Release the leases of the route, once it no longer delivers messages.
+         */
+        void release();
+    }
+}
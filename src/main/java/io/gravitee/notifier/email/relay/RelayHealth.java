@@ -0,0 +1,140 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.relay;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Health of an SMTP relay: a circuit breaker opened after consecutive failures, along with the number of sends in
+ * flight and an exponentially weighted moving average of the send latency.
+ *
+ * Once opened, the circuit rejects sends for a while, then lets a single probe through: the circuit is closed again if
+ * it succeeds, or opened for another period if it fails.
+ *
+ * Healths are shared by all the notifiers targeting the same relay.
+ *
+ * @author GraviteeSource Team
+ */
+public class RelayHealth {
+
+    private static final Map<String, RelayHealth> HEALTHS = new ConcurrentHashMap<>();
+
+    private static final double EWMA_ALPHA = 0.2;
+
+    private final Options options;
+
+    private final LongSupplier clock;
+
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicLong openedAt = new AtomicLong(-1);
+
+    private final AtomicBoolean probing = new AtomicBoolean();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private final AtomicLong latencyEwma = new AtomicLong(Double.doubleToLongBits(0));
+
+    RelayHealth(final Options options, final LongSupplier clock) {
+        this.options = options;
+        this.clock = clock;
+    }
+
+    /**
+     * Get the health of a relay, (re)creating it if its options changed.
+     *
+     * @param key the key of the relay, usually its <code>host:port:username</code>
+     */
+    public static RelayHealth of(final String key, final Options options) {
+        return HEALTHS.compute(key, (k, health) ->
+            health != null && health.options.equals(options) ? health : new RelayHealth(options, System::nanoTime)
+        );
+    }
+
+    /**
+     * Try to start a send on the relay.
+     *
+     * @return <code>false</code> if the circuit is open, in which case the send must not be started
+     */
+    public boolean tryAcquire() {
+        final long opened = openedAt.get();
+        if (opened >= 0) {
+            if (clock.getAsLong() - opened < options.openDurationNanos() || !probing.compareAndSet(false, true)) {
+                return false;
+            }
+        }
+        inFlight.incrementAndGet();
+        return true;
+    }
+
+    public void success(final long latencyNanos) {
+        inFlight.decrementAndGet();
+        consecutiveFailures.set(0);
+        openedAt.set(-1);
+        probing.set(false);
+        latencyEwma.updateAndGet(bits -> {
+            final double ewma = Double.longBitsToDouble(bits);
+            return Double.doubleToLongBits(ewma == 0 ? latencyNanos : ewma + EWMA_ALPHA * (latencyNanos - ewma));
+        });
+    }
+
+    public void failure() {
+        inFlight.decrementAndGet();
+        if (consecutiveFailures.incrementAndGet() >= options.failureThreshold() || probing.get()) {
+            openedAt.set(clock.getAsLong());
+            probing.set(false);
+        }
+    }
+
+    /**
+     * End a send which has not reached the relay, for instance rejected by a local limit, leaving the health of the
+     * relay unchanged. If the send was the probe of an open circuit, another probe is let through.
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+        if (openedAt.get() >= 0) {
+            probing.set(false);
+        }
+    }
+
+    public boolean isOpen() {
+        return openedAt.get() >= 0;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public double latencyEwma() {
+        return Double.longBitsToDouble(latencyEwma.get());
+    }
+
+    /**
+     * @param failureThreshold the number of consecutive failures opening the circuit
+     * @param openDurationNanos how long the circuit stays open before a probe is let through
+     */
+    public record Options(int failureThreshold, long openDurationNanos) {
+        public Options {
+            failureThreshold = Math.max(1, failureThreshold);
+            openDurationNanos = Math.max(0, openDurationNanos);
+        }
+    }
+}
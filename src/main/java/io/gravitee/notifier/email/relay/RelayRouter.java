@@ -0,0 +1,152 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.relay;
+
+import io.gravitee.notifier.email.client.MailSender;
+import io.gravitee.notifier.email.configuration.RelayStrategy;
+import io.gravitee.notifier.email.metrics.SmtpReplyCodes;
+import io.vertx.ext.mail.MailMessage;
+import io.vertx.ext.mail.MailResult;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Sender spreading the emails over several SMTP relays.
+ *
+ * Relays whose circuit is open are skipped. When a send fails before the relay could answer (connection or handshake
+ * error) or with a transient (4xx) reply, it is retried on the next relay. Permanent (5xx) failures are not retried
+ * since the other relays would most likely reject the email the same way.
+ *
+ * A send rejected locally, by the limits of a relay, is tried on the next relay without affecting the health of the
+ * relay. The latency of a relay is measured from the moment the send actually starts, once it has waited for the limits
+ * of the relay.
+ *
+ * @author GraviteeSource Team
+ */
+public class RelayRouter implements MailSender {
+
+    private final RelayStrategy strategy;
+
+    private final List<Relay> relays;
+
+    public RelayRouter(final RelayStrategy strategy, final List<Relay> relays) {
+        this.strategy = strategy;
+        this.relays = relays;
+    }
+
+    @Override
+    public CompletionStage<MailResult> send(final MailMessage message) {
+        return attempt(message, order(), 0, null);
+    }
+
+    private CompletionStage<MailResult> attempt(final MailMessage message, final List<Relay> order, final int index, final Throwable last) {
+        for (int i = index; i < order.size(); i++) {
+            final Relay relay = order.get(i);
+            if (!relay.health().tryAcquire()) {
+                continue;
+            }
+
+            final int next = i + 1;
+            final AtomicLong start = new AtomicLong(System.nanoTime());
+            return relay
+                .sender()
+                .send(message, () -> start.set(System.nanoTime()))
+                .handle((result, throwable) -> {
+                    if (throwable == null) {
+                        relay.health().success(System.nanoTime() - start.get());
+                        return CompletableFuture.completedFuture(result);
+                    }
+                    if (isLocalRejection(throwable)) {
+                        relay.health().cancel();
+                        return attempt(message, order, next, throwable);
+                    }
+                    relay.health().failure();
+                    return isRetryable(throwable)
+                        ? attempt(message, order, next, throwable)
+                        : CompletableFuture.<MailResult>failedFuture(throwable);
+                })
+                .thenCompose(stage -> stage);
+        }
+
+        return CompletableFuture.failedFuture(last != null ? last : new IllegalStateException("No SMTP relay available"));
+    }
+
+    /**
+     * @return the relays, in the order they must be tried
+     */
+    List<Relay> order() {
+        if (strategy != RelayStrategy.LOAD_BALANCING) {
+            return relays;
+        }
+        // Loads are snapshotted since they keep changing while sorting
+        return relays
+            .stream()
+            .map(relay -> new RankedRelay(relay, relay.load()))
+            .sorted(Comparator.comparingDouble(RankedRelay::load))
+            .map(RankedRelay::relay)
+            .toList();
+    }
+
+    private static boolean isLocalRejection(final Throwable throwable) {
+        Throwable current = throwable;
+        while (current != null) {
+            if (current instanceof RejectedExecutionException) {
+                return true;
+            }
+            current = current.getCause() == current ? null : current.getCause();
+        }
+        return false;
+    }
+
+    private static boolean isRetryable(final Throwable throwable) {
+        final String replyCode = SmtpReplyCodes.of(throwable);
+        return replyCode == null || replyCode.charAt(0) == '4';
+    }
+
+    private record RankedRelay(Relay relay, double load) {}
+
+    /**
+     * Sender of the emails to a relay.
+     */
+    public interface RelaySender {
+        /**
+         * @param message the message to send
+         * @param started called once the send actually starts, after waiting for the limits of the relay if any
+         */
+        CompletionStage<MailResult> send(MailMessage message, Runnable started);
+    }
+
+    /**
+     * @param key the key of the relay, usually its <code>host:port:username</code>
+     * @param weight the relative share of the emails sent to the relay when load balancing
+     */
+    public record Relay(String key, int weight, RelayHealth health, RelaySender sender) {
+        /**
+         * The load of the relay: its sends in flight, weighted by its latency and weight. Relays with an open circuit
+         * come last.
+         */
+        double load() {
+            if (health.isOpen()) {
+                return Double.MAX_VALUE;
+            }
+            return (health.inFlight() + 1) * (health.latencyEwma() + 1) / Math.max(1, weight);
+        }
+    }
+}
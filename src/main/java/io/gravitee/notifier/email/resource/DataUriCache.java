@@ -0,0 +1,201 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.resource;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.mail.MailAttachment;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of the images embedded as data URIs in the email templates, bounded by the total number of decoded bytes
+ * it holds.
+ *
+ * Images are keyed by the SHA-256 digest of their data URI: the same image found in several emails is decoded only
+ * once, and identical images of an email can share a single inline part.
+ *
+ * @author GraviteeSource Team
+ */
+public class DataUriCache {
+
+    private static final String DATA_SCHEME = "data:";
+
+    private static final String BASE64_PARAMETER = ";base64";
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(DataUriCache::sha256);
+
+    private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[1024]);
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<String, Image> images = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long currentBytes;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public DataUriCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the image of the given data URI, decoding it if it is not cached.
+     *
+     * @param dataUri a <code>data:image/...;base64,</code> URI
+     * @return the decoded image
+     * @throws IllegalArgumentException if the data of the URI is not valid Base64
+     */
+    public Image get(final String dataUri) {
+        final String digest = digest(dataUri);
+
+        synchronized (this) {
+            final Image image = images.get(digest);
+            if (image != null) {
+                hits.increment();
+                return image;
+            }
+        }
+
+        misses.increment();
+        final Image image = decode(dataUri, digest);
+
+        if (image.size() <= maxBytes) {
+            put(image);
+        }
+        return image;
+    }
+
+    private synchronized void put(final Image image) {
+        final Image previous = images.put(image.digest(), image);
+        if (previous != null) {
+            currentBytes -= previous.size();
+        }
+        currentBytes += image.size();
+
+        final Iterator<Map.Entry<String, Image>> iterator = images.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<String, Image> eldest = iterator.next();
+            iterator.remove();
+            currentBytes -= eldest.getValue().size();
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Decode a <code>data:[&lt;media type&gt;][;parameter=value]*;base64,&lt;data&gt;</code> URI, scanning it once.
+     */
+    static Image decode(final String dataUri, final String digest) {
+        if (!dataUri.regionMatches(true, 0, DATA_SCHEME, 0, DATA_SCHEME.length())) {
+            throw new IllegalArgumentException("Not a data URI");
+        }
+
+        final int length = dataUri.length();
+        int pos = DATA_SCHEME.length();
+        while (pos < length && dataUri.charAt(pos) != ';' && dataUri.charAt(pos) != ',') {
+            pos++;
+        }
+        final String contentType = dataUri.substring(DATA_SCHEME.length(), pos).trim().toLowerCase(Locale.ROOT);
+
+        // Look for the base64 parameter, the last one before the data
+        boolean base64 = false;
+        while (pos < length && dataUri.charAt(pos) == ';') {
+            final int parameterStart = pos;
+            pos++;
+            while (pos < length && dataUri.charAt(pos) != ';' && dataUri.charAt(pos) != ',') {
+                pos++;
+            }
+            base64 =
+                pos - parameterStart == BASE64_PARAMETER.length() &&
+                dataUri.regionMatches(true, parameterStart, BASE64_PARAMETER, 0, BASE64_PARAMETER.length());
+        }
+        if (!base64) {
+            throw new IllegalArgumentException("Only base64 encoded data URIs are supported");
+        }
+
+        final int dataStart = pos < length && dataUri.charAt(pos) == ',' ? pos + 1 : pos;
+        final byte[] bytes = Base64.getDecoder().decode(dataUri.substring(dataStart));
+        return new Image(digest, contentType, Buffer.buffer(bytes));
+    }
+
+    /**
+     * Compute the digest of a data URI, which only contains ASCII characters, without copying it.
+     */
+    static String digest(final String dataUri) {
+        final MessageDigest digest = SHA_256.get();
+        final byte[] scratch = SCRATCH.get();
+        final int length = dataUri.length();
+        for (int offset = 0; offset < length; offset += scratch.length) {
+            final int count = Math.min(scratch.length, length - offset);
+            for (int i = 0; i < count; i++) {
+                final char c = dataUri.charAt(offset + i);
+                if (c > 0x7f) {
+                    throw new IllegalArgumentException("Invalid character in data URI");
+                }
+                scratch[i] = (byte) c;
+            }
+            digest.update(scratch, 0, count);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public synchronized long size() {
+        return currentBytes;
+    }
+
+    /**
+     * A decoded image. Like {@link ResourceCache.Resource}, its buffer is shared and must never be modified.
+     */
+    public record Image(String digest, String contentType, Buffer buffer) {
+        public MailAttachment inlineAttachment(final String contentId) {
+            return ResourceCache.inlineAttachment(contentType, buffer, contentId);
+        }
+
+        public int size() {
+            return buffer.length();
+        }
+    }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.resource;
+
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.buffer.Buffer;
+import io.vertx.core.file.AsyncFile;
+import io.vertx.core.file.OpenOptions;
+import io.vertx.core.streams.ReadStream;
+import java.nio.file.Path;
+
+/**
+ * Content of a file attachment, read by chunks while the email is written to the SMTP connection instead of being
+ * loaded in memory, so that the heap used by an email does not depend on the size of its attachments.
+ *
+ * The file is only opened once the mail client starts consuming the stream, on the context of the client, and is
+ * closed as soon as it has been fully read or has failed. An email which is never sent does not hold any file handle.
+ *
+ * @author GraviteeSource Team
+ */
+public class FileAttachmentStream implements ReadStream<Buffer> {
+
+    private static final OpenOptions READ_ONLY = new OpenOptions().setRead(true).setWrite(false).setCreate(false);
+
+    private final Path path;
+
+    private Handler<Buffer> handler;
+
+    private Handler<Void> endHandler;
+
+    private Handler<Throwable> exceptionHandler;
+
+    private long demand = Long.MAX_VALUE;
+
+    private boolean opened;
+
+    private AsyncFile file;
+
+    public FileAttachmentStream(final Path path) {
+        this.path = path;
+    }
+
+    @Override
+    public FileAttachmentStream handler(final Handler<Buffer> handler) {
+        this.handler = handler;
+        if (handler != null && !opened) {
+            open();
+        }
+        return this;
+    }
+
+    @Override
+    public FileAttachmentStream exceptionHandler(final Handler<Throwable> handler) {
+        this.exceptionHandler = handler;
+        return this;
+    }
+
+    @Override
+    public FileAttachmentStream endHandler(final Handler<Void> handler) {
+        this.endHandler = handler;
+        return this;
+    }
+
+    @Override
+    public FileAttachmentStream pause() {
+        demand = 0;
+        if (file != null) {
+            file.pause();
+        }
+        return this;
+    }
+
+    @Override
+    public FileAttachmentStream resume() {
+        return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public FileAttachmentStream fetch(final long amount) {
+        demand = demand + amount < 0 ? Long.MAX_VALUE : demand + amount;
+        if (file != null) {
+            file.fetch(amount);
+        }
+        return this;
+    }
+
+    private void open() {
+        opened = true;
+        final Context context = Vertx.currentContext();
+        if (context == null) {
+            fail(new IllegalStateException("The attachment " + path.getFileName() + " must be read from a Vert.x context"));
+            return;
+        }
+
+        context
+            .owner()
+            .fileSystem()
+            .open(path.toString(), READ_ONLY)
+            .onSuccess(this::read)
+            .onFailure(this::fail);
+    }
+
+    private void read(final AsyncFile asyncFile) {
+        file = asyncFile;
+        asyncFile.pause();
+        asyncFile.exceptionHandler(error -> asyncFile.close().onComplete(closed -> fail(error)));
+        asyncFile.endHandler(end -> asyncFile.close().onComplete(closed -> end()));
+        asyncFile.handler(chunk -> {
+            if (handler != null) {
+                handler.handle(chunk);
+            }
+        });
+        asyncFile.fetch(demand);
+    }
+
+    private void end() {
+        if (endHandler != null) {
+            endHandler.handle(null);
+        }
+    }
+
+    private void fail(final Throwable error) {
+        if (exceptionHandler != null) {
+            exceptionHandler.handle(error);
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+}
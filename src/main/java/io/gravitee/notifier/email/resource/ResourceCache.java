@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.resource;
+
+import io.vertx.core.buffer.Buffer;
+import io.vertx.ext.mail.MailAttachment;
+import io.vertx.ext.mail.impl.MailAttachmentImpl;
+import jakarta.activation.MimetypesFileTypeMap;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * LRU cache of the template resources (mainly images) inlined in emails, bounded by the total number of bytes it holds.
+ *
+ * Entries are keyed by the canonical path of the resource and invalidated as soon as the last modification time of the
+ * file changes.
+ *
+ * @author GraviteeSource Team
+ */
+public class ResourceCache {
+
+    private static final String INLINE = "inline";
+
+    private final long maxBytes;
+
+    private final LinkedHashMap<Path, Resource> resources = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long currentBytes;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    private final LongAdder evictions = new LongAdder();
+
+    public ResourceCache(final long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Get the resource at the given path, loading it from the file system if it is not cached or has been modified.
+     *
+     * @param path the canonical path of the resource
+     * @return the resource
+     */
+    public Resource get(final Path path) throws IOException {
+        final long lastModified = Files.getLastModifiedTime(path).toMillis();
+
+        synchronized (this) {
+            final Resource resource = resources.get(path);
+            if (resource != null && resource.lastModified() == lastModified) {
+                hits.increment();
+                return resource;
+            }
+        }
+
+        misses.increment();
+        final byte[] bytes = Files.readAllBytes(path);
+        final Resource resource = new Resource(getContentTypeByFileName(path.getFileName().toString()), Buffer.buffer(bytes), lastModified);
+
+        if (bytes.length <= maxBytes) {
+            put(path, resource);
+        }
+        return resource;
+    }
+
+    private synchronized void put(final Path path, final Resource resource) {
+        final Resource previous = resources.put(path, resource);
+        if (previous != null) {
+            currentBytes -= previous.size();
+        }
+        currentBytes += resource.size();
+
+        final Iterator<Map.Entry<Path, Resource>> iterator = resources.entrySet().iterator();
+        while (currentBytes > maxBytes && iterator.hasNext()) {
+            final Map.Entry<Path, Resource> eldest = iterator.next();
+            iterator.remove();
+            currentBytes -= eldest.getValue().size();
+            evictions.increment();
+        }
+    }
+
+    static MailAttachment inlineAttachment(final String contentType, final Buffer buffer, final String contentId) {
+        return new MailAttachmentImpl()
+            .setContentType(contentType)
+            .setData(buffer.slice())
+            .setDisposition(INLINE)
+            .setContentId('<' + contentId + '>');
+    }
+
+    public static String getContentTypeByFileName(final String fileName) {
+        if (fileName == null) {
+            return "";
+        } else if (fileName.endsWith(".png")) {
+            return "image/png";
+        }
+        return MimetypesFileTypeMap.getDefaultFileTypeMap().getContentType(fileName);
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    public synchronized long size() {
+        return currentBytes;
+    }
+
+    /**
+     * A cached resource. The underlying buffer is shared by all the emails using the resource and must never be
+     * modified, use {@link #data()} to get a read view of it.
+     */
+    public record Resource(String contentType, Buffer buffer, long lastModified) {
+        public Buffer data() {
+            return buffer.slice();
+        }
+
+        /**
+         * Create the inline part of an email for this resource. Everything but the content id is shared with the
+         * other emails using the resource, the data being a read view of the cached buffer.
+         */
+        public MailAttachment inlineAttachment(final String contentId) {
+            return ResourceCache.inlineAttachment(contentType, buffer, contentId);
+        }
+
+        public int size() {
+            return buffer.length();
+        }
+    }
+}
@@ -0,0 +1,232 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.stream;
+
+import io.gravitee.notifier.email.DeliveryResult;
+import io.gravitee.notifier.email.NotificationRequest;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.streams.ReadStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * Stream of the delivery results of a stream of notifications. Notifications are only fetched from the source as
+ * deliveries complete and their results are consumed, so that at most <code>maxInFlight</code> notifications are
+ * being delivered or waiting for their result to be consumed: a producer faster than the SMTP endpoints, or a slow
+ * consumer of the results, slows the source down instead of accumulating pending sends in memory.
+ *
+ * Results are emitted in the order the deliveries complete. The stream ends once the source has ended, or failed, and
+ * all the notifications received from it have been delivered. All the state is handled on the context the stream has been created on.
+ *
+ * @author GraviteeSource Team
+ */
+public class NotificationStream implements ReadStream<DeliveryResult> {
+
+    private final Context context;
+
+    private final ReadStream<NotificationRequest> source;
+
+    private final Function<NotificationRequest, CompletionStage<Void>> sender;
+
+    private final int maxInFlight;
+
+    private final Deque<DeliveryResult> results = new ArrayDeque<>();
+
+    private Handler<DeliveryResult> handler;
+
+    private Handler<Void> endHandler;
+
+    private Handler<Throwable> exceptionHandler;
+
+    private long demand = Long.MAX_VALUE;
+
+    /**
+     * Number of notifications fetched from the source and not received yet.
+     */
+    private int requested;
+
+    /**
+     * Number of notifications received and whose result has not been emitted yet.
+     */
+    private int pending;
+
+    private boolean started;
+
+    private boolean sourceEnded;
+
+    private boolean ended;
+
+    public NotificationStream(
+        final Context context,
+        final ReadStream<NotificationRequest> source,
+        final Function<NotificationRequest, CompletionStage<Void>> sender,
+        final int maxInFlight
+    ) {
+        this.context = context;
+        this.source = source;
+        this.sender = sender;
+        this.maxInFlight = Math.max(maxInFlight, 1);
+    }
+
+    @Override
+    public NotificationStream handler(final Handler<DeliveryResult> handler) {
+        onContext(() -> {
+            this.handler = handler;
+            if (handler != null && !started) {
+                start();
+            }
+        });
+        return this;
+    }
+
+    @Override
+    public NotificationStream exceptionHandler(final Handler<Throwable> handler) {
+        this.exceptionHandler = handler;
+        return this;
+    }
+
+    @Override
+    public NotificationStream endHandler(final Handler<Void> handler) {
+        this.endHandler = handler;
+        return this;
+    }
+
+    @Override
+    public NotificationStream pause() {
+        onContext(() -> demand = 0);
+        return this;
+    }
+
+    @Override
+    public NotificationStream resume() {
+        return fetch(Long.MAX_VALUE);
+    }
+
+    @Override
+    public NotificationStream fetch(final long amount) {
+        onContext(() -> {
+            demand = demand + amount < 0 ? Long.MAX_VALUE : demand + amount;
+            drain();
+        });
+        return this;
+    }
+
+    private void start() {
+        started = true;
+        source.pause();
+        source.exceptionHandler(this::fail);
+        source.endHandler(end -> {
+            sourceEnded = true;
+            checkEnd();
+        });
+        source.handler(this::deliver);
+        requestMore();
+    }
+
+    private void deliver(final NotificationRequest request) {
+        requested = Math.max(requested - 1, 0);
+        pending++;
+
+        CompletionStage<Void> delivery;
+        try {
+            delivery = sender.apply(request);
+        } catch (final RuntimeException ex) {
+            delivery = CompletableFuture.failedFuture(ex);
+        }
+        delivery.whenComplete((result, throwable) -> {
+            final Throwable failure = throwable instanceof CompletionException && throwable.getCause() != null
+                ? throwable.getCause()
+                : throwable;
+            context.runOnContext(v -> completed(new DeliveryResult(request, failure)));
+        });
+    }
+
+    private void completed(final DeliveryResult result) {
+        results.add(result);
+        drain();
+    }
+
+    private void drain() {
+        while (demand > 0 && !results.isEmpty() && handler != null) {
+            final DeliveryResult result = results.poll();
+            pending--;
+            if (demand != Long.MAX_VALUE) {
+                demand--;
+            }
+            handler.handle(result);
+        }
+        requestMore();
+        checkEnd();
+    }
+
+    /**
+     * Fetch as many notifications from the source as there is room for in the window of in-flight notifications.
+     */
+    private void requestMore() {
+        if (!started || sourceEnded) {
+            return;
+        }
+        final int room = maxInFlight - pending - requested;
+        if (room > 0) {
+            requested += room;
+            source.fetch(room);
+        }
+    }
+
+    private void checkEnd() {
+        if (sourceEnded && pending == 0 && !ended) {
+            ended = true;
+            if (endHandler != null) {
+                endHandler.handle(null);
+            }
+        }
+    }
+
+    /**
+     * Report the failure of the source, which will not emit any more notification, and end the stream once the
+     * notifications already received from it have been delivered.
+     */
+    private void fail(final Throwable error) {
+        onContext(() -> {
+            if (exceptionHandler != null) {
+                exceptionHandler.handle(error);
+            }
+            sourceEnded = true;
+            checkEnd();
+        });
+    }
+
+    private void onContext(final Runnable action) {
+        if (Vertx.currentContext() == context) {
+            action.run();
+        } else {
+            context.runOnContext(v -> action.run());
+        }
+    }
+
+    /**
+     * Number of notifications being delivered or whose result has not been consumed yet.
+     */
+    int pending() {
+        return pending;
+    }
+}
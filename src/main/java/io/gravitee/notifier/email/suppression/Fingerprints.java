@@ -0,0 +1,48 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.suppression;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Fingerprint of an email, the SHA-256 digest of the components it is identified by.
+ *
+ * @author GraviteeSource Team
+ */
+public final class Fingerprints {
+
+    private Fingerprints() {}
+
+    public static String of(final List<String> components) {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (String component : components) {
+                if (component != null) {
+                    digest.update(component.getBytes(StandardCharsets.UTF_8));
+                }
+                // Separate the components so that moving characters from one to the other changes the fingerprint
+                digest.update((byte) 0);
+            }
+            return HexFormat.of().formatHex(digest.digest());
+        } catch (final NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.suppression;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Default {@link SuppressionStore}, keeping the fingerprints in memory until they expire. Expired fingerprints are
+ * purged every few records, so that the store does not grow with the number of distinct emails.
+ *
+ * @author GraviteeSource Team
+ */
+public class InMemorySuppressionStore implements SuppressionStore {
+
+    private static final int PURGE_INTERVAL = 1024;
+
+    private final Map<String, Long> expirations = new ConcurrentHashMap<>();
+
+    private final AtomicInteger records = new AtomicInteger();
+
+    private final LongSupplier clock;
+
+    public InMemorySuppressionStore() {
+        this(System::nanoTime);
+    }
+
+    InMemorySuppressionStore(final LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    @Override
+    public CompletionStage<Boolean> tryRecord(final String fingerprint, final Duration window) {
+        final long now = clock.getAsLong();
+        final long expiration = now + window.toNanos();
+        final boolean[] recorded = new boolean[1];
+        expirations.compute(fingerprint, (key, current) -> {
+            if (current != null && current - now > 0) {
+                return current;
+            }
+            recorded[0] = true;
+            return expiration;
+        });
+
+        if (records.incrementAndGet() % PURGE_INTERVAL == 0) {
+            expirations.values().removeIf(current -> current - now <= 0);
+        }
+        return CompletableFuture.completedFuture(recorded[0]);
+    }
+
+    @Override
+    public CompletionStage<Void> forget(final String fingerprint) {
+        expirations.remove(fingerprint);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    int size() {
+        return expirations.size();
+    }
+}
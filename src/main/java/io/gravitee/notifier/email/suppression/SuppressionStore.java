@@ -0,0 +1,57 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.suppression;
+
+import java.time.Duration;
+import java.util.concurrent.CompletionStage;
+
+/**
+ * Store of the fingerprints of the emails recently sent, allowing to suppress identical emails sent within a window,
+ * for instance by every node of a cluster for the same event.
+ *
+ * Implementations are discovered with the {@link java.util.ServiceLoader} mechanism, the first one found being used. A
+ * distributed implementation makes the suppression cluster-wide; when none is available, fingerprints are kept in
+ * memory and emails are only suppressed per node.
+ *
+ * @author GraviteeSource Team
+ */
+public interface SuppressionStore {
+    /**
+     * @return the first implementation available, or an in-memory store
+     */
+    static SuppressionStore load() {
+        return SuppressionStoreLoader.INSTANCE;
+    }
+
+    /**
+     * Record the fingerprint of an email about to be sent, unless it has already been recorded within the window. This
+     * must be atomic: when several nodes record the same fingerprint at the same time, only one of them may succeed.
+     *
+     * @param fingerprint the fingerprint of the email
+     * @param window how long the fingerprint is kept
+     * @return <code>true</code> if the email must be sent, <code>false</code> if it must be suppressed
+     */
+    CompletionStage<Boolean> tryRecord(String fingerprint, Duration window);
+
+    /**
+     * Forget the fingerprint of an email which could not be sent, so that the identical emails are no longer
+     * suppressed.
+     *
+     * @param fingerprint the fingerprint of the email
+     * @return a stage completed once the fingerprint has been forgotten
+     */
+    CompletionStage<Void> forget(String fingerprint);
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.template;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import io.gravitee.notifier.email.html.ImageSources;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Partially evaluated HTML body template. The body is split once into static segments, on which the image sources
+ * have already been located, and dynamic slots (the <code>${...}</code> interpolations). Sending an email then only
+ * renders the slots, in a single pass, and concatenates them with the static segments: its cost depends on the size
+ * of the parameters rather than on the size of the template.
+ *
+ * Only the bodies made of plain interpolations can be partially evaluated, {@link #compile(String, Configuration)}
+ * returns <code>null</code> for the others (directives, macros, interpolations in image tags, ...) which have to be
+ * rendered as a whole.
+ *
+ * @author GraviteeSource Team
+ */
+public final class BodyTemplate {
+
+    private static final char SLOT = '\uE000';
+
+    private static final char IMAGE = '\uE001';
+
+    private static final String[] DIRECTIVES = { "<#", "</#", "<@", "</@", "#{", "[#", "[/#", "[@", "[/@", "[=" };
+
+    /**
+     * Slot outputs which would change how the images of the static segments are located.
+     */
+    private static final String[] MARKUP = { "<!--", "-->" };
+
+    /**
+     * The characters of the image tags and comment delimiters, which could form markup across a slot boundary.
+     */
+    private static final String MARKUP_CHARACTERS = "<>!-imgIMG";
+
+    /**
+     * The pairs of consecutive characters of the image tags and comment delimiters. Markup formed across a slot
+     * boundary contains one of them on each side of the boundary.
+     */
+    private static final String[] MARKUP_PAIRS = { "<i", "im", "mg", "<!", "!-", "--", "->" };
+
+    /**
+     * The edge of a slot at the start or the end of the body.
+     */
+    private static final char NO_EDGE = 0;
+
+    private final Template slots;
+
+    private final int slotCount;
+
+    /**
+     * The parts of the body: static text, {@link #SLOT} for the next slot or {@link #IMAGE} for the next image source.
+     */
+    private final List<Object> parts;
+
+    private final List<String> images;
+
+    /**
+     * The parts of the body before the image sources are located, to restore the rendered body.
+     */
+    private final List<String> rawSegments;
+
+    /**
+     * The characters before and after each slot, {@link #SLOT} when it is next to another slot.
+     */
+    private final char[] edges;
+
+    private BodyTemplate(
+        final Template slots,
+        final int slotCount,
+        final List<Object> parts,
+        final List<String> images,
+        final List<String> rawSegments
+    ) {
+        this.slots = slots;
+        this.slotCount = slotCount;
+        this.parts = parts;
+        this.images = images;
+        this.rawSegments = rawSegments;
+        this.edges = new char[2 * slotCount];
+        for (int i = 0; i < slotCount; i++) {
+            final String before = rawSegments.get(i);
+            final String after = rawSegments.get(i + 1);
+            // An empty segment between two slots joins their outputs
+            edges[2 * i] = before.isEmpty() ? (i > 0 ? SLOT : NO_EDGE) : before.charAt(before.length() - 1);
+            edges[2 * i + 1] = after.isEmpty() ? (i < slotCount - 1 ? SLOT : NO_EDGE) : after.charAt(0);
+        }
+    }
+
+    /**
+     * Split the body template into static segments and dynamic slots.
+     *
+     * @param source the body template, with its line breaks already converted
+     * @param configuration the configuration to compile the slots with
+     * @return the partially evaluated template, or <code>null</code> if the body has to be rendered as a whole
+     */
+    public static BodyTemplate compile(final String source, final Configuration configuration) throws Exception {
+        if (source.indexOf(SLOT) >= 0 || source.indexOf(IMAGE) >= 0) {
+            return null;
+        }
+
+        final List<String> rawSegments = new ArrayList<>();
+        final StringBuilder expressions = new StringBuilder();
+        final StringBuilder skeleton = new StringBuilder(source.length());
+        int slotCount = 0;
+        int from = 0;
+        int start;
+        while ((start = source.indexOf("${", from)) >= 0) {
+            final int end = interpolationEnd(source, start + 2);
+            if (end < 0) {
+                return null;
+            }
+            rawSegments.add(source.substring(from, start));
+            skeleton.append(source, from, start).append(SLOT);
+            if (slotCount++ > 0) {
+                expressions.append(SLOT);
+            }
+            expressions.append(source, start, end + 1);
+            from = end + 1;
+        }
+        rawSegments.add(source.substring(from));
+        skeleton.append(source, from, source.length());
+
+        for (String segment : rawSegments) {
+            if (containsAny(segment, DIRECTIVES)) {
+                return null;
+            }
+        }
+        if (slotCount > 0 && hasSlotInImageTag(skeleton)) {
+            return null;
+        }
+
+        // Locate the image sources once, they are rewritten for each email
+        final List<String> images = new ArrayList<>();
+        final String located = ImageSources.rewrite(
+            skeleton.toString(),
+            src -> {
+                if (src.startsWith("http")) {
+                    return null;
+                }
+                images.add(src);
+                return String.valueOf(IMAGE);
+            }
+        );
+
+        final List<Object> parts = new ArrayList<>();
+        int segmentStart = 0;
+        for (int i = 0; i < located.length(); i++) {
+            final char c = located.charAt(i);
+            if (c == SLOT || c == IMAGE) {
+                if (i > segmentStart) {
+                    parts.add(located.substring(segmentStart, i));
+                }
+                parts.add(c);
+                segmentStart = i + 1;
+            }
+        }
+        if (segmentStart < located.length()) {
+            parts.add(located.substring(segmentStart));
+        }
+
+        final Template slots = new Template(Integer.toHexString(source.hashCode()), expressions.toString(), configuration);
+        return new BodyTemplate(slots, slotCount, List.copyOf(parts), List.copyOf(images), List.copyOf(rawSegments));
+    }
+
+    /**
+     * Render the slots of the body.
+     *
+     * @param model the data model
+     * @return the rendered slots, or <code>null</code> if one of them outputs markup requiring the body to be rendered
+     * as a whole
+     */
+    public Rendered render(final Map<String, Object> model) throws IOException, TemplateException {
+        if (slotCount == 0) {
+            return new Rendered(this, List.of());
+        }
+
+        final List<String> values = new ArrayList<>(slotCount);
+        try (PooledWriter output = PooledWriter.acquire()) {
+            slots.process(model, output);
+            int from = 0;
+            int separator;
+            while ((separator = output.indexOf(SLOT, from)) >= 0) {
+                values.add(output.substring(from, separator));
+                from = separator + 1;
+            }
+            values.add(output.substring(from, output.length()));
+        }
+
+        if (values.size() != slotCount) {
+            return null;
+        }
+        for (int i = 0; i < slotCount; i++) {
+            if (formsMarkup(values.get(i), edges[2 * i], edges[2 * i + 1])) {
+                return null;
+            }
+        }
+        return new Rendered(this, values);
+    }
+
+    /**
+     * Check whether the output of a slot contains markup, or could form markup with the characters around it.
+     */
+    private static boolean formsMarkup(final String value, final char before, final char after) {
+        if (value.isEmpty()) {
+            return joins(before, after);
+        }
+        return (
+            joins(before, value.charAt(0)) ||
+            joins(value.charAt(value.length() - 1), after) ||
+            ImageSources.hasImage(value) ||
+            containsAny(value, MARKUP)
+        );
+    }
+
+    /**
+     * Check whether two characters, once next to each other, could be part of an image tag or a comment delimiter.
+     * The output of an adjacent slot is not known here, so any markup character next to it is considered to join.
+     */
+    private static boolean joins(final char left, final char right) {
+        if (left == NO_EDGE || right == NO_EDGE) {
+            return false;
+        }
+        if (left == SLOT || right == SLOT) {
+            return isMarkup(left == SLOT ? right : left);
+        }
+        final String pair = new String(new char[] { Character.toLowerCase(left), Character.toLowerCase(right) });
+        for (String markup : MARKUP_PAIRS) {
+            if (markup.equals(pair)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isMarkup(final char c) {
+        return MARKUP_CHARACTERS.indexOf(c) >= 0;
+    }
+
+    /**
+     * Find the closing brace of an interpolation, skipping the braces of the string literals and nested hashes.
+     */
+    private static int interpolationEnd(final String source, final int from) {
+        int depth = 0;
+        char quote = 0;
+        for (int i = from; i < source.length(); i++) {
+            final char c = source.charAt(i);
+            if (quote != 0) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == quote) {
+                    quote = 0;
+                }
+            } else if (c == '"' || c == '\'') {
+                quote = c;
+            } else if (c == '{') {
+                depth++;
+            } else if (c == '}') {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Check whether a slot is inside an image tag, where its output could add or change the source of the image.
+     */
+    private static boolean hasSlotInImageTag(final CharSequence skeleton) {
+        final String html = skeleton.toString();
+        int tag = indexOfImageTag(html, 0);
+        while (tag >= 0) {
+            char quote = 0;
+            int i = tag + 4;
+            for (; i < html.length(); i++) {
+                final char c = html.charAt(i);
+                if (c == SLOT) {
+                    return true;
+                } else if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    break;
+                }
+            }
+            tag = indexOfImageTag(html, i);
+        }
+        return false;
+    }
+
+    private static int indexOfImageTag(final String html, final int from) {
+        for (int i = from; i <= html.length() - 4; i++) {
+            if (html.regionMatches(true, i, "<img", 0, 4)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean containsAny(final String text, final String[] searches) {
+        for (String search : searches) {
+            if (text.contains(search)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The rendered slots of a body. Two rendered bodies of the same template are equal if and only if their HTML
+     * is, which allows comparing them without concatenating them.
+     */
+    public record Rendered(BodyTemplate template, List<String> values) {
+        /**
+         * Get the rendered body, as it would have been by rendering the whole template.
+         */
+        public String html() {
+            try (PooledWriter html = PooledWriter.acquire()) {
+                for (int i = 0; i < template.rawSegments.size(); i++) {
+                    if (i > 0) {
+                        html.append(values.get(i - 1));
+                    }
+                    html.append(template.rawSegments.get(i));
+                }
+                return html.toString();
+            }
+        }
+
+        /**
+         * Get the body to send, with the image sources rewritten.
+         *
+         * @param rewriter called with each image source, returns the new source
+         */
+        public String write(final ImageSources.Rewriter rewriter) throws Exception {
+            try (PooledWriter html = PooledWriter.acquire()) {
+                int slot = 0;
+                int image = 0;
+                for (Object part : template.parts) {
+                    if (part instanceof String text) {
+                        html.append(text);
+                    } else if ((Character) part == SLOT) {
+                        html.append(values.get(slot++));
+                    } else {
+                        final String source = template.images.get(image++);
+                        final String rewritten = rewriter.rewrite(source);
+                        html.append(rewritten == null ? source : rewritten);
+                    }
+                }
+                return html.toString();
+            }
+        }
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.template;
+
+import java.io.Writer;
+
+/**
+ * Unsynchronized writer into a character buffer reused by all the renderings of a thread, so that rendering a message
+ * only allocates its final {@link String} instead of growing and copying a new buffer every time.
+ *
+ * Writers must be closed once their content has been read, to give their buffer back. Buffers which have grown
+ * beyond {@link #MAX_RETAINED_CAPACITY} are dropped rather than retained by the thread.
+ *
+ * @author GraviteeSource Team
+ */
+public final class PooledWriter extends Writer implements CharSequence {
+
+    static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+    private static final ThreadLocal<PooledWriter> WRITERS = ThreadLocal.withInitial(PooledWriter::new);
+
+    private StringBuilder buffer = new StringBuilder(1024);
+
+    private boolean inUse;
+
+    private PooledWriter() {}
+
+    /**
+     * Get the writer of the current thread, or a new one if it is already in use.
+     */
+    public static PooledWriter acquire() {
+        final PooledWriter writer = WRITERS.get();
+        if (writer.inUse) {
+            final PooledWriter nested = new PooledWriter();
+            nested.inUse = true;
+            return nested;
+        }
+        writer.inUse = true;
+        return writer;
+    }
+
+    @Override
+    public void write(final int c) {
+        buffer.append((char) c);
+    }
+
+    @Override
+    public void write(final char[] chars, final int offset, final int length) {
+        buffer.append(chars, offset, length);
+    }
+
+    @Override
+    public void write(final String str, final int offset, final int length) {
+        buffer.append(str, offset, offset + length);
+    }
+
+    @Override
+    public PooledWriter append(final CharSequence csq) {
+        buffer.append(csq);
+        return this;
+    }
+
+    @Override
+    public PooledWriter append(final CharSequence csq, final int start, final int end) {
+        buffer.append(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public PooledWriter append(final char c) {
+        buffer.append(c);
+        return this;
+    }
+
+    @Override
+    public int length() {
+        return buffer.length();
+    }
+
+    @Override
+    public char charAt(final int index) {
+        return buffer.charAt(index);
+    }
+
+    @Override
+    public CharSequence subSequence(final int start, final int end) {
+        return buffer.subSequence(start, end);
+    }
+
+    public String substring(final int start, final int end) {
+        return buffer.substring(start, end);
+    }
+
+    public int indexOf(final char c, final int from) {
+        for (int i = from; i < buffer.length(); i++) {
+            if (buffer.charAt(i) == c) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public String toString() {
+        return buffer.toString();
+    }
+
+    @Override
+    public void flush() {}
+
+    /**
+     * Give the buffer back to the thread, the content of the writer must not be read anymore.
+     */
+    @Override
+    public void close() {
+        if (buffer.capacity() > MAX_RETAINED_CAPACITY) {
+            buffer = new StringBuilder(1024);
+        } else {
+            buffer.setLength(0);
+        }
+        inUse = false;
+    }
+}
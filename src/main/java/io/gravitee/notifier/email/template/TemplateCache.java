@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.template;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import freemarker.template.TemplateException;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of compiled FreeMarker templates, keyed by their source. Notification fields (recipients, sender,
+ * subject and body) never change for a given configuration, so they are parsed once and only rendered afterward.
+ *
+ * @author GraviteeSource Team
+ */
+public class TemplateCache {
+
+    private final Configuration configuration;
+
+    private final Map<String, Template> templates;
+
+    private final LongAdder hits = new LongAdder();
+
+    private final LongAdder misses = new LongAdder();
+
+    public TemplateCache(final Configuration configuration, final int maxSize) {
+        this.configuration = configuration;
+        this.templates = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Template> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * Render the given template source against the model, compiling it first if it is not cached yet.
+     *
+     * @param source the template source, may be <code>null</code>
+     * @param model the data model
+     * @return the rendered template or <code>null</code> if the source is <code>null</code>
+     */
+    public String render(final String source, final Map<String, Object> model) throws IOException, TemplateException {
+        if (source == null) {
+            return null;
+        }
+        try (PooledWriter writer = PooledWriter.acquire()) {
+            get(source).process(model, writer);
+            return writer.toString();
+        }
+    }
+
+    public Template get(final String source) throws IOException {
+        Template template;
+        synchronized (templates) {
+            template = templates.get(source);
+        }
+
+        if (template != null) {
+            hits.increment();
+            return template;
+        }
+
+        misses.increment();
+        // Compile outside the lock, concurrent misses on the same source simply compile it twice.
+        template = new Template(Integer.toHexString(source.hashCode()), source, configuration);
+        synchronized (templates) {
+            templates.put(source, template);
+        }
+        return template;
+    }
+
+    public long hits() {
+        return hits.sum();
+    }
+
+    public long misses() {
+        return misses.sum();
+    }
+
+    public int size() {
+        synchronized (templates) {
+            return templates.size();
+        }
+    }
+}
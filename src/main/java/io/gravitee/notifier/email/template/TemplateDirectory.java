@@ -0,0 +1,258 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.template;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import freemarker.template.Configuration;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.stream.Stream;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Operations on the directory the FreeMarker templates are loaded from: preloading them at startup, and watching it
+ * to invalidate the cached templates as soon as their file changes rather than checking it on every lookup.
+ *
+ * @author GraviteeSource Team
+ */
+public final class TemplateDirectory {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TemplateDirectory.class);
+
+    private static final Set<String> TEMPLATE_EXTENSIONS = Set.of("html", "htm", "ftl", "ftlh", "txt", "xml");
+
+    private static final Map<Path, Watcher> WATCHERS = new HashMap<>();
+
+    private TemplateDirectory() {}
+
+    /**
+     * Load the templates of the directory, so that they are compiled and cached before the first notification.
+     * Files which are not templates (images, ...) are skipped, as well as templates which cannot be compiled.
+     *
+     * @param configuration the configuration whose template loader targets the directory
+     * @param root the templates directory
+     * @param maxTemplates the maximum number of templates to load, usually the size of the template cache
+     * @return the number of templates loaded
+     */
+    public static int preload(final Configuration configuration, final Path root, final int maxTemplates) throws IOException {
+        if (!Files.isDirectory(root)) {
+            return 0;
+        }
+
+        final List<String> names;
+        try (Stream<Path> files = Files.walk(root)) {
+            names = files
+                .filter(Files::isRegularFile)
+                .filter(TemplateDirectory::isTemplate)
+                .limit(maxTemplates)
+                .map(root::relativize)
+                .map(TemplateDirectory::name)
+                .toList();
+        }
+
+        int loaded = 0;
+        for (String name : names) {
+            try {
+                configuration.getTemplate(name);
+                loaded++;
+            } catch (final IOException ex) {
+                LOGGER.warn("Unable to preload email template {}: {}", name, ex.getMessage());
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * Watch the directory and invalidate the templates of the configuration when their file is modified or deleted.
+     * A single thread watches a given directory, whatever the number of configurations registered on it, and is
+     * stopped once the last of them has been released.
+     *
+     * @return the watch, which must be released once no longer needed, or <code>null</code> if the directory does not
+     *     exist
+     */
+    public static synchronized Watch watch(final Configuration configuration, final Path root) throws IOException {
+        if (!Files.isDirectory(root)) {
+            LOGGER.warn("Email templates directory {} does not exist, it is not watched", root);
+            return null;
+        }
+
+        final Path directory = root.toRealPath();
+        Watcher watcher = WATCHERS.get(directory);
+        if (watcher == null) {
+            watcher = new Watcher(directory);
+            WATCHERS.put(directory, watcher);
+        }
+        watcher.configurations.add(configuration);
+        watcher.references++;
+        return new Watch(watcher, configuration);
+    }
+
+    private static synchronized void release(final Watcher watcher, final Configuration configuration) {
+        watcher.configurations.remove(configuration);
+        if (--watcher.references <= 0) {
+            WATCHERS.remove(watcher.root, watcher);
+            watcher.close();
+        }
+    }
+
+    private static boolean isTemplate(final Path path) {
+        final String fileName = path.getFileName().toString();
+        final int dot = fileName.lastIndexOf('.');
+        return dot > 0 && TEMPLATE_EXTENSIONS.contains(fileName.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static String name(final Path relativePath) {
+        return relativePath.toString().replace(relativePath.getFileSystem().getSeparator(), "/");
+    }
+
+    /**
+     * The registration of a configuration on the watcher of a directory.
+     */
+    public static final class Watch {
+
+        private final Watcher watcher;
+
+        private final Configuration configuration;
+
+        private boolean released;
+
+        private Watch(final Watcher watcher, final Configuration configuration) {
+            this.watcher = watcher;
+            this.configuration = configuration;
+        }
+
+        public synchronized void release() {
+            if (!released) {
+                released = true;
+                TemplateDirectory.release(watcher, configuration);
+            }
+        }
+    }
+
+    private static final class Watcher implements Runnable {
+
+        private final Path root;
+
+        private final WatchService watchService;
+
+        private final Map<WatchKey, Path> directories = new HashMap<>();
+
+        private final Set<Configuration> configurations = Collections.synchronizedSet(Collections.newSetFromMap(new WeakHashMap<>()));
+
+        private int references;
+
+        private Watcher(final Path root) throws IOException {
+            this.root = root;
+            this.watchService = FileSystems.getDefault().newWatchService();
+            register(root);
+
+            final Thread thread = new Thread(this, "gio-email-notifier-templates-watcher");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        private void close() {
+            try {
+                watchService.close();
+            } catch (final IOException ex) {
+                LOGGER.warn("Unable to stop watching email templates directory {}", root, ex);
+            }
+        }
+
+        private void register(final Path directory) throws IOException {
+            try (Stream<Path> paths = Files.walk(directory)) {
+                for (Path path : paths.filter(Files::isDirectory).toList()) {
+                    directories.put(path.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE), path);
+                }
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (true) {
+                    final WatchKey key = watchService.take();
+                    final Path directory = directories.get(key);
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == OVERFLOW || directory == null) {
+                            invalidateAll();
+                        } else {
+                            changed(directory.resolve((Path) event.context()), event.kind());
+                        }
+                    }
+                    if (!key.reset()) {
+                        // The directory has been deleted along with its templates
+                        directories.remove(key);
+                        invalidateAll();
+                    }
+                }
+            } catch (final InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } catch (final ClosedWatchServiceException ex) {
+                // Nothing to watch anymore
+            }
+        }
+
+        private void changed(final Path path, final WatchEvent.Kind<?> kind) {
+            if (kind == ENTRY_CREATE && Files.isDirectory(path)) {
+                try {
+                    register(path);
+                } catch (final IOException ex) {
+                    LOGGER.warn("Unable to watch email templates directory {}", path, ex);
+                }
+                return;
+            }
+
+            final String name = name(root.relativize(path));
+            for (Configuration configuration : configurations()) {
+                try {
+                    configuration.removeTemplateFromCache(name);
+                } catch (final IOException ex) {
+                    configuration.clearTemplateCache();
+                }
+            }
+        }
+
+        private void invalidateAll() {
+            configurations().forEach(Configuration::clearTemplateCache);
+        }
+
+        private List<Configuration> configurations() {
+            synchronized (configurations) {
+                return new ArrayList<>(configurations);
+            }
+        }
+    }
+}
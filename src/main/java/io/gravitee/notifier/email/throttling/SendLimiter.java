@@ -0,0 +1,407 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.throttling;
+
+import io.gravitee.notifier.email.configuration.NotificationPriority;
+import io.gravitee.notifier.email.configuration.QueueOverflowPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Admission control of the emails sent to an SMTP endpoint: limits both the rate of the sends (with a token bucket) and
+ * the number of sends in flight. Sends exceeding the limits are queued in a bounded queue, and started as soon as
+ * tokens and slots are available again.
+ *
+ * Queued sends are split in one queue per {@link NotificationPriority}. Higher priority sends are started first, and
+ * may use connections reserved to them, unless a lower priority send has been waiting for too long.
+ *
+ * Limiters are shared by all the notifiers targeting the same endpoint with the same limits, and are lock-free since
+ * sends come from many event loops. They are reference counted, and forgotten once released by their last user.
+ *
+ * @author GraviteeSource Team
+ */
+public class SendLimiter {
+
+    private static final Map<LimiterKey, SendLimiter> LIMITERS = new ConcurrentHashMap<>();
+
+    private static final ScheduledExecutorService SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        final Thread thread = new Thread(runnable, "gio-email-notifier-limiter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Options options;
+
+    private final TokenBucket tokenBucket;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    private static final NotificationPriority[] PRIORITIES = NotificationPriority.values();
+
+    private static final int ACQUIRED = 0;
+
+    private static final int NO_SLOT = 1;
+
+    private static final int NO_TOKEN = 2;
+
+    private static final int STARTED = 0;
+
+    private static final int SKIPPED = 1;
+
+    private static final int STOPPED = 2;
+
+    private final List<Queue<PendingSend<?>>> queues;
+
+    private final AtomicInteger[] inFlightByPriority;
+
+    private final AtomicInteger queued = new AtomicInteger();
+
+    private final AtomicBoolean wakeUpScheduled = new AtomicBoolean();
+
+    private final LongAdder throttled = new LongAdder();
+
+    private final LongAdder rejected = new LongAdder();
+
+    private final LimiterKey key;
+
+    /**
+     * Number of users of the limiter, only updated while computing its entry of the registry.
+     */
+    private int references;
+
+    SendLimiter(final Options options) {
+        this(null, options);
+    }
+
+    private SendLimiter(final LimiterKey key, final Options options) {
+        this.key = key;
+        this.options = options;
+        this.tokenBucket = options.rate() > 0 ? new TokenBucket(options.rate(), options.rate()) : null;
+        this.queues = newQueues();
+        this.inFlightByPriority = new AtomicInteger[PRIORITIES.length];
+        for (int i = 0; i < inFlightByPriority.length; i++) {
+            inFlightByPriority[i] = new AtomicInteger();
+        }
+    }
+
+    private static List<Queue<PendingSend<?>>> newQueues() {
+        final List<Queue<PendingSend<?>>> queues = new ArrayList<>(PRIORITIES.length);
+        for (int i = 0; i < PRIORITIES.length; i++) {
+            queues.add(new ConcurrentLinkedQueue<>());
+        }
+        return List.copyOf(queues);
+    }
+
+    /**
+     * Get the limiter of an endpoint for the given limits. Notifiers targeting the same endpoint with different limits
+     * each get their own limiter, so that they don't reset the tokens and in-flight sends of each other.
+     *
+     * @param key the key of the endpoint, usually its <code>host:port:username</code>
+     * @param options the limits of the endpoint
+     * @return the limiter, which must be released once no longer used
+     */
+    public static SendLimiter of(final String key, final Options options) {
+        return of(key, options, limiter -> {});
+    }
+
+    /**
+     * Get the limiter of an endpoint for the given limits, see {@link #of(String, Options)}.
+     *
+     * @param created called with the limiter when it is created, rather than shared with previous users
+     */
+    public static SendLimiter of(final String key, final Options options, final Consumer<SendLimiter> created) {
+        return LIMITERS.compute(
+            new LimiterKey(key, options),
+            (limiterKey, limiter) -> {
+                final SendLimiter acquired = limiter != null ? limiter : newLimiter(limiterKey, options, created);
+                acquired.references++;
+                return acquired;
+            }
+        );
+    }
+
+    private static SendLimiter newLimiter(final LimiterKey key, final Options options, final Consumer<SendLimiter> created) {
+        final SendLimiter limiter = new SendLimiter(key, options);
+        created.accept(limiter);
+        return limiter;
+    }
+
+    /**
+     * Release a reference on the limiter, forgetting it once its last user has released it. The sends already submitted
+     * are still started.
+     */
+    public void release() {
+        if (key != null) {
+            LIMITERS.computeIfPresent(key, (limiterKey, limiter) -> limiter == this && --references <= 0 ? null : limiter);
+        }
+    }
+
+    /**
+     * Start the send as soon as the limits allow it.
+     *
+     * @param send starts the send and returns its result
+     * @return the result of the send, failed with a {@link RejectedExecutionException} if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(final Supplier<CompletionStage<T>> send) {
+        return submit(NotificationPriority.NORMAL, send);
+    }
+
+    /**
+     * Start the send as soon as the limits allow it, after the queued sends of higher priority. When the queue is full,
+     * the oldest queued send of a lower priority is dropped to make room for it.
+     *
+     * @param priority the priority of the send
+     * @param send starts the send and returns its result
+     * @return the result of the send, failed with a {@link RejectedExecutionException} if the queue is full
+     */
+    public <T> CompletableFuture<T> submit(final NotificationPriority priority, final Supplier<CompletionStage<T>> send) {
+        final PendingSend<T> pending = new PendingSend<>(send, new CompletableFuture<>(), priority, System.nanoTime());
+
+        if (queued.get() == 0 && tryAcquire(priority) == ACQUIRED) {
+            start(pending);
+            return pending.result();
+        }
+
+        throttled.increment();
+        if (queued.incrementAndGet() > options.maxQueued()) {
+            final PendingSend<?> dropped = pollDroppable(priority);
+            queued.decrementAndGet();
+            rejected.increment();
+            if (dropped != null) {
+                dropped.result().completeExceptionally(new RejectedExecutionException("Email dropped, the send queue is full"));
+            } else {
+                pending.result().completeExceptionally(new RejectedExecutionException("Email rejected, the send queue is full"));
+                return pending.result();
+            }
+        }
+
+        queues.get(priority.ordinal()).offer(pending);
+        drain();
+        return pending.result();
+    }
+
+    /**
+     * Take the send to drop for a new send of the given priority: the oldest send of the lowest priority below it, or
+     * of the same priority when dropping the oldest sends.
+     */
+    private PendingSend<?> pollDroppable(final NotificationPriority priority) {
+        final int highest = options.overflowPolicy() == QueueOverflowPolicy.DROP_OLDEST ? priority.ordinal() : priority.ordinal() + 1;
+        for (int i = PRIORITIES.length - 1; i >= highest; i--) {
+            final PendingSend<?> oldest = queues.get(i).poll();
+            if (oldest != null) {
+                return oldest;
+            }
+        }
+        return null;
+    }
+
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    public int queued() {
+        return queued.get();
+    }
+
+    public long throttled() {
+        return throttled.sum();
+    }
+
+    public long rejected() {
+        return rejected.sum();
+    }
+
+    /**
+     * Take a slot and a token for a send of the given priority. The slots reserved to higher priorities, and not used
+     * by them, are not available to it.
+     */
+    private int tryAcquire(final NotificationPriority priority) {
+        if (options.maxConcurrent() > 0) {
+            final int limit = Math.max(options.maxConcurrent() - heldBack(priority), 1);
+            int current;
+            do {
+                current = inFlight.get();
+                if (current >= limit) {
+                    return NO_SLOT;
+                }
+            } while (!inFlight.compareAndSet(current, current + 1));
+        } else {
+            inFlight.incrementAndGet();
+        }
+
+        if (tokenBucket != null && !tokenBucket.tryConsume()) {
+            inFlight.decrementAndGet();
+            scheduleWakeUp();
+            return NO_TOKEN;
+        }
+        inFlightByPriority[priority.ordinal()].incrementAndGet();
+        return ACQUIRED;
+    }
+
+    private void release(final NotificationPriority priority) {
+        inFlightByPriority[priority.ordinal()].decrementAndGet();
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * Get the number of slots to keep free for the sends of higher priority than the given one.
+     */
+    private int heldBack(final NotificationPriority priority) {
+        final Lanes lanes = options.lanes();
+        int heldBack = 0;
+        if (priority.compareTo(NotificationPriority.HIGH) > 0) {
+            heldBack += Math.max(lanes.reservedHigh() - inFlightByPriority[NotificationPriority.HIGH.ordinal()].get(), 0);
+        }
+        if (priority.compareTo(NotificationPriority.NORMAL) > 0) {
+            heldBack += Math.max(lanes.reservedNormal() - inFlightByPriority[NotificationPriority.NORMAL.ordinal()].get(), 0);
+        }
+        return heldBack;
+    }
+
+    private void drain() {
+        int status = STARTED;
+        while (status == STARTED && queued.get() > 0) {
+            final NotificationPriority starved = starved();
+            status = starved == null ? SKIPPED : tryStart(starved);
+            for (int i = 0; status == SKIPPED && i < PRIORITIES.length; i++) {
+                status = tryStart(PRIORITIES[i]);
+            }
+        }
+    }
+
+    private int tryStart(final NotificationPriority priority) {
+        final Queue<PendingSend<?>> queue = queues.get(priority.ordinal());
+        if (queue.isEmpty()) {
+            return SKIPPED;
+        }
+
+        final int acquired = tryAcquire(priority);
+        if (acquired != ACQUIRED) {
+            return acquired == NO_TOKEN ? STOPPED : SKIPPED;
+        }
+
+        final PendingSend<?> pending = queue.poll();
+        if (pending == null) {
+            // Another thread took the last queued send, give the slot back
+            release(priority);
+            return SKIPPED;
+        }
+        queued.decrementAndGet();
+        start(pending);
+        return STARTED;
+    }
+
+    /**
+     * Get the lowest priority whose oldest queued send has been waiting for longer than the max wait, if any.
+     */
+    private NotificationPriority starved() {
+        if (options.lanes().maxWaitNanos() <= 0) {
+            return null;
+        }
+        final long now = System.nanoTime();
+        for (int i = PRIORITIES.length - 1; i > 0; i--) {
+            final PendingSend<?> oldest = queues.get(i).peek();
+            if (oldest != null && now - oldest.queuedAt() > options.lanes().maxWaitNanos()) {
+                return PRIORITIES[i];
+            }
+        }
+        return null;
+    }
+
+    private <T> void start(final PendingSend<T> pending) {
+        CompletionStage<T> stage;
+        try {
+            stage = pending.send().get();
+        } catch (Exception ex) {
+            stage = CompletableFuture.failedFuture(ex);
+        }
+
+        stage.whenComplete((result, cause) -> {
+            release(pending.priority());
+            if (cause == null) {
+                pending.result().complete(result);
+            } else {
+                pending.result().completeExceptionally(cause);
+            }
+            drain();
+        });
+    }
+
+    private void scheduleWakeUp() {
+        if (wakeUpScheduled.compareAndSet(false, true)) {
+            SCHEDULER.schedule(
+                () -> {
+                    wakeUpScheduled.set(false);
+                    drain();
+                },
+                Math.max(1, tokenBucket.nanosToNextToken()),
+                TimeUnit.NANOSECONDS
+            );
+        }
+    }
+
+    /**
+     * @param rate the max number of emails sent per second, 0 for no limit
+     * @param maxConcurrent the max number of emails sent at the same time, 0 for no limit
+     * @param maxQueued the max number of emails waiting to be sent
+     * @param overflowPolicy what to do when the queue is full
+     * @param lanes how the concurrency is shared between the priorities
+     */
+    public record Options(int rate, int maxConcurrent, int maxQueued, QueueOverflowPolicy overflowPolicy, Lanes lanes) {
+        public Options(final int rate, final int maxConcurrent, final int maxQueued, final QueueOverflowPolicy overflowPolicy) {
+            this(rate, maxConcurrent, maxQueued, overflowPolicy, Lanes.NONE);
+        }
+
+        public boolean isUnlimited() {
+            return rate <= 0 && maxConcurrent <= 0;
+        }
+    }
+
+    /**
+     * @param reservedHigh the number of concurrent sends kept available for the high priority sends
+     * @param reservedNormal the number of concurrent sends kept available for the normal priority sends, which low
+     *                       priority sends cannot use either
+     * @param maxWaitNanos the time after which a queued send is started before the sends of higher priority, 0 to
+     *                     always start the sends of higher priority first
+     */
+    public record Lanes(int reservedHigh, int reservedNormal, long maxWaitNanos) {
+        public static final Lanes NONE = new Lanes(0, 0, 0);
+    }
+
+    private record LimiterKey(String key, Options options) {}
+
+    private record PendingSend<T>(
+        Supplier<CompletionStage<T>> send,
+        CompletableFuture<T> result,
+        NotificationPriority priority,
+        long queuedAt
+    ) {}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.throttling;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Lock-free token bucket, implemented as a generic cell rate algorithm: the only state is the theoretical arrival time
+ * of the next token, updated with a compare-and-set.
+ *
+ * @author GraviteeSource Team
+ */
+public class TokenBucket {
+
+    private final long interval;
+
+    private final long tolerance;
+
+    private final LongSupplier clock;
+
+    private final AtomicLong theoreticalArrivalTime;
+
+    /**
+     * @param rate the number of tokens per second
+     * @param burst the max number of tokens which can be consumed at once
+     */
+    public TokenBucket(final int rate, final int burst) {
+        this(rate, burst, System::nanoTime);
+    }
+
+    TokenBucket(final int rate, final int burst, final LongSupplier clock) {
+        this.interval = TimeUnit.SECONDS.toNanos(1) / Math.max(1, rate);
+        this.tolerance = interval * (Math.max(1, burst) - 1);
+        this.clock = clock;
+        this.theoreticalArrivalTime = new AtomicLong(clock.getAsLong());
+    }
+
+    /**
+     * @return <code>true</code> if a token has been consumed
+     */
+    public boolean tryConsume() {
+        while (true) {
+            final long now = clock.getAsLong();
+            final long current = theoreticalArrivalTime.get();
+            final long tat = Math.max(current, now);
+            if (tat - now > tolerance) {
+                return false;
+            }
+            if (theoreticalArrivalTime.compareAndSet(current, tat + interval)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return the time (in ns) to wait before a token is available
+     */
+    public long nanosToNextToken() {
+        return Math.max(0, theoreticalArrivalTime.get() - clock.getAsLong() - tolerance);
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.gravitee.notifier.api.Notification;
+import io.gravitee.notifier.email.configuration.EmailNotifierConfiguration;
+import io.vertx.core.Vertx;
+import jakarta.mail.internet.MimeMessage;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/**
+ * @author GraviteeSource Team
+ */
+class EmailNotifierBatchTest extends AbstractEmailNotifierTest {
+
+    private EmailNotifier emailNotifier;
+
+    private final EmailNotifierConfiguration emailNotifierConfiguration = new EmailNotifierConfiguration();
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+        .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication())
+        .withPerMethodLifecycle(true);
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        super.setUp();
+
+        emailNotifierConfiguration.setFrom("from@mail.com");
+        emailNotifierConfiguration.setTo("${application}@mail.com");
+        emailNotifierConfiguration.setSubject("API ${api} is down");
+        emailNotifierConfiguration.setBody("Application ${application}");
+        emailNotifierConfiguration.setHost(ServerSetupTest.SMTP.getBindAddress());
+        emailNotifierConfiguration.setPort(ServerSetupTest.SMTP.getPort());
+
+        emailNotifier = new EmailNotifier(emailNotifierConfiguration);
+        emailNotifier.setTemplatesPath(this.getClass().getResource("/io/gravitee/notifier/email/templates").getPath());
+        emailNotifier.afterPropertiesSet();
+    }
+
+    @Test
+    void shouldSendBatchOfNotifications() {
+        List<NotificationRequest> requests = IntStream.range(0, 5)
+            .mapToObj(i -> new NotificationRequest(notification(), Map.of("api", "echo", "application", "app" + i)))
+            .toList();
+
+        Vertx.vertx().runOnContext(event -> {
+            List<CompletableFuture<Void>> futures = emailNotifier.sendBatch(requests);
+            assertThat(futures).hasSize(5);
+
+            CompletableFuture.allOf(futures.toArray(CompletableFuture[]::new))
+                .whenComplete((unused, throwable) -> {
+                    MimeMessage[] receivedMessages = greenMail.getReceivedMessages();
+                    assertThat(receivedMessages).hasSize(5);
+                    assertThat(Arrays.stream(receivedMessages).map(GreenMailUtil::getBody)).containsExactlyInAnyOrder(
+                        "Application app0",
+                        "Application app1",
+                        "Application app2",
+                        "Application app3",
+                        "Application app4"
+                    );
+                })
+                .whenComplete(completeOrFailNow());
+        });
+
+        awaitCompletionAndCheckFailure();
+    }
+
+    @Test
+    void shouldFailOnlyInvalidNotificationOfBatch() {
+        List<NotificationRequest> requests = List.of(
+            new NotificationRequest(notification(), Map.of("api", "echo", "application", "app")),
+            new NotificationRequest(notification(), Map.of("api", "echo"))
+        );
+
+        Vertx.vertx().runOnContext(event -> {
+            List<CompletableFuture<Void>> futures = emailNotifier.sendBatch(requests);
+
+            futures
+                .get(0)
+                .thenCompose(unused -> futures.get(1))
+                .whenComplete((unused, throwable) ->
+                    testContext.verify(() -> {
+                        assertThat(throwable).isNotNull();
+                        assertThat(futures.get(0)).isCompleted();
+                        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+                        testContext.completeNow();
+                    })
+                );
+        });
+
+        awaitCompletionAndCheckFailure();
+    }
+
+    @Test
+    void shouldFailBatchOutsideOfVertxContext() {
+        List<CompletableFuture<Void>> futures = emailNotifier.sendBatch(
+            List.of(new NotificationRequest(notification(), Map.of("api", "echo", "application", "app")))
+        );
+
+        assertThat(futures).singleElement().satisfies(future -> assertThat(future).isCompletedExceptionally());
+    }
+
+    @Test
+    void shouldFailBatchOnceDestroyed() {
+        emailNotifier.destroy();
+
+        Vertx.vertx().runOnContext(event -> {
+            List<CompletableFuture<Void>> futures = emailNotifier.sendBatch(
+                List.of(new NotificationRequest(notification(), Map.of("api", "echo", "application", "app")))
+            );
+
+            testContext.verify(() -> {
+                assertThat(futures).singleElement().satisfies(future -> assertThat(future).isCompletedExceptionally());
+                assertThat(greenMail.getReceivedMessages()).isEmpty();
+                testContext.completeNow();
+            });
+        });
+
+        awaitCompletionAndCheckFailure();
+    }
+
+    private static Notification notification() {
+        Notification notification = new Notification();
+        notification.setType(EmailNotifier.TYPE);
+        return notification;
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.gravitee.notifier.api.Notification;
+import io.gravitee.notifier.email.configuration.EmailNotifierConfiguration;
+import io.vertx.core.Vertx;
+import jakarta.mail.MessagingException;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/**
+ * @author GraviteeSource Team
+ */
+class EmailNotifierDigestTest extends AbstractEmailNotifierTest {
+
+    private EmailNotifier emailNotifier;
+
+    private final Notification notification = new Notification();
+
+    private final EmailNotifierConfiguration emailNotifierConfiguration = new EmailNotifierConfiguration();
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+        .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication())
+        .withPerMethodLifecycle(true);
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        super.setUp();
+
+        notification.setType(EmailNotifier.TYPE);
+
+        emailNotifierConfiguration.setFrom("from@mail.com");
+        emailNotifierConfiguration.setTo("${owner}@mail.com");
+        emailNotifierConfiguration.setSubject("subject of email");
+        emailNotifierConfiguration.setBody("${api} is ${status}");
+        emailNotifierConfiguration.setHost(ServerSetupTest.SMTP.getBindAddress());
+        emailNotifierConfiguration.setPort(ServerSetupTest.SMTP.getPort());
+
+        emailNotifier = new EmailNotifier(emailNotifierConfiguration);
+        emailNotifier.setTemplatesPath(this.getClass().getResource("/io/gravitee/notifier/email/templates").getPath());
+        setField(emailNotifier, "digestEnabled", true);
+        setField(emailNotifier, "digestMaxSize", 2);
+        emailNotifier.afterPropertiesSet();
+    }
+
+    @Test
+    void shouldSendOneDigestPerRecipient() throws MessagingException {
+        Vertx.vertx().runOnContext(event ->
+            emailNotifier
+                .send(notification, parameters("john", "echo", "DOWN"))
+                .thenCompose(unused -> emailNotifier.send(notification, parameters("jane", "echo", "DOWN")))
+                .thenCompose(unused -> emailNotifier.send(notification, parameters("john", "echo", "UP")))
+                .whenComplete(completeOrFailNow())
+        );
+
+        awaitCompletionAndCheckFailure();
+
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+        assertThat(greenMail.getReceivedMessages()[0].getAllRecipients()[0]).hasToString("john@mail.com");
+        assertThat(greenMail.getReceivedMessages()[0].getSubject()).isEqualTo("2 notifications");
+        assertThat(GreenMailUtil.getBody(greenMail.getReceivedMessages()[0])).isEqualTo("echo is DOWN<hr>echo is UP");
+
+        // Pending digests are flushed when the notifier is destroyed
+        emailNotifier.destroy();
+        assertThat(greenMail.waitForIncomingEmail(5000, 2)).isTrue();
+        assertThat(greenMail.getReceivedMessages()[1].getAllRecipients()[0]).hasToString("jane@mail.com");
+    }
+
+    @Test
+    void shouldRenderDigestTemplate() throws Exception {
+        setField(emailNotifier, "digestTemplate", "digest_sample.html");
+        setField(emailNotifier, "digestSubject", "${notifications?size} alerts for ${recipient}");
+
+        Vertx.vertx().runOnContext(event ->
+            emailNotifier
+                .send(notification, parameters("john", "echo", "DOWN"))
+                .thenCompose(unused -> emailNotifier.send(notification, parameters("john", "whoami", "UP")))
+                .whenComplete(completeOrFailNow())
+        );
+
+        awaitCompletionAndCheckFailure();
+
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+        assertThat(greenMail.getReceivedMessages()[0].getSubject()).isEqualTo("2 alerts for john@mail.com");
+        assertThat(GreenMailUtil.getBody(greenMail.getReceivedMessages()[0])).isEqualTo("echo is DOWN<br>whoami is UP<br>");
+    }
+
+    @Test
+    void shouldRejectNotificationOnceDestroyed() {
+        emailNotifier.destroy();
+
+        Vertx.vertx().runOnContext(event ->
+            emailNotifier
+                .send(notification, parameters("john", "echo", "DOWN"))
+                .whenComplete((unused, throwable) ->
+                    testContext.verify(() -> {
+                        assertThat(throwable).isInstanceOf(IllegalStateException.class);
+                        testContext.completeNow();
+                    })
+                )
+        );
+
+        awaitCompletionAndCheckFailure();
+
+        assertThat(greenMail.waitForIncomingEmail(500, 1)).isFalse();
+    }
+
+    private static Map<String, Object> parameters(final String owner, final String api, final String status) {
+        final Map<String, Object> parameters = new HashMap<>();
+        parameters.put("owner", owner);
+        parameters.put("api", api);
+        parameters.put("status", status);
+        return parameters;
+    }
+}
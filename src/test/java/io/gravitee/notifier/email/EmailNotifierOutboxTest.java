@@ -0,0 +1,137 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.GreenMailUtil;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.gravitee.notifier.api.Notification;
+import io.gravitee.notifier.email.configuration.EmailNotifierConfiguration;
+import io.gravitee.notifier.email.outbox.MailJournal;
+import io.vertx.core.Vertx;
+import io.vertx.core.json.JsonObject;
+import io.vertx.ext.mail.MailMessage;
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author GraviteeSource Team
+ */
+class EmailNotifierOutboxTest extends AbstractEmailNotifierTest {
+
+    private EmailNotifier emailNotifier;
+
+    private final Notification notification = new Notification();
+
+    private final EmailNotifierConfiguration emailNotifierConfiguration = new EmailNotifierConfiguration();
+
+    private final Map<String, Object> parameters = new HashMap<>();
+
+    @TempDir
+    Path outboxPath;
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+        .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication())
+        .withPerMethodLifecycle(true);
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        super.setUp();
+
+        notification.setType(EmailNotifier.TYPE);
+
+        emailNotifierConfiguration.setFrom("from@mail.com");
+        emailNotifierConfiguration.setTo("to@mail.com");
+        emailNotifierConfiguration.setSubject("subject of email");
+        emailNotifierConfiguration.setBody("template_sample.html");
+        emailNotifierConfiguration.setHost(ServerSetupTest.SMTP.getBindAddress());
+        emailNotifierConfiguration.setPort(ServerSetupTest.SMTP.getPort());
+
+        emailNotifier = new EmailNotifier(emailNotifierConfiguration);
+        emailNotifier.setTemplatesPath(this.getClass().getResource("/io/gravitee/notifier/email/templates").getPath());
+        setField(emailNotifier, "outboxEnabled", true);
+        setField(emailNotifier, "outboxPath", outboxPath.toString());
+        // Delivered emails whose reply is lost when the server stops must not be retried in the next tests
+        setField(emailNotifier, "outboxMaxAttempts", 1);
+        emailNotifier.afterPropertiesSet();
+    }
+
+    @AfterEach
+    void tearDown() {
+        emailNotifier.destroy();
+    }
+
+    @Test
+    void shouldDeliverEmailFromOutbox() {
+        Vertx.vertx().runOnContext(event -> emailNotifier.send(notification, parameters).whenComplete(completeOrFailNow()));
+
+        awaitCompletionAndCheckFailure();
+
+        // The notification is completed as soon as the email is in the outbox, the delivery happens in the background
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+        assertThat(GreenMailUtil.getBody(greenMail.getReceivedMessages()[0])).isEqualTo("template_sample.html");
+    }
+
+    @Test
+    void shouldDeliverEmailFromOutboxOnceNotifierIsDestroyed() {
+        Vertx.vertx().runOnContext(event ->
+            emailNotifier
+                .send(notification, parameters)
+                .whenComplete((result, throwable) -> emailNotifier.destroy())
+                .whenComplete(completeOrFailNow())
+        );
+
+        awaitCompletionAndCheckFailure();
+
+        assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+    }
+
+    @Test
+    void shouldDeliverEmailLeftInOutboxOnStartup() throws Exception {
+        String endpoint = ServerSetupTest.SMTP.getBindAddress() + ':' + ServerSetupTest.SMTP.getPort() + ":null";
+        try (MailJournal journal = new MailJournal(outboxPath.resolve(endpoint.replace(':', '_') + ".journal"), 64 * 1024)) {
+            MailMessage message = new MailMessage().setFrom("from@mail.com").setTo("to@mail.com").setSubject("pending").setText("body");
+            journal.append(new JsonObject().put("priority", "NORMAL").put("message", message.toJson()).toBuffer().getBytes());
+        }
+        EmailNotifier restartedNotifier = new EmailNotifier(emailNotifierConfiguration);
+        restartedNotifier.setTemplatesPath(emailNotifier.getTemplatesPath());
+        setField(restartedNotifier, "outboxEnabled", true);
+        setField(restartedNotifier, "outboxPath", outboxPath.toString());
+        setField(restartedNotifier, "outboxMaxAttempts", 1);
+        setField(restartedNotifier, "vertx", Vertx.vertx());
+
+        try {
+            restartedNotifier.afterPropertiesSet();
+
+            assertThat(greenMail.waitForIncomingEmail(5000, 1)).isTrue();
+            assertThat(greenMail.getReceivedMessages()[0].getSubject()).isEqualTo("pending");
+        } finally {
+            restartedNotifier.destroy();
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import io.gravitee.notifier.api.Notification;
+import io.gravitee.notifier.email.configuration.EmailNotifierConfiguration;
+import io.vertx.core.Vertx;
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class EmailNotifierPipeliningTest extends AbstractEmailNotifierTest {
+
+    private static final long ROUND_TRIP_TIME = 50;
+
+    private EmailNotifier emailNotifier;
+
+    private FakeSmtpServer server;
+
+    private final Notification notification = new Notification();
+
+    private final EmailNotifierConfiguration emailNotifierConfiguration = new EmailNotifierConfiguration();
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        super.setUp();
+
+        notification.setType(EmailNotifier.TYPE);
+
+        emailNotifierConfiguration.setFrom("from@mail.com");
+        emailNotifierConfiguration.setTo("first@mail.com,second@mail.com,third@mail.com");
+        emailNotifierConfiguration.setSubject("subject of email");
+        emailNotifierConfiguration.setBody("template_sample.html");
+        emailNotifierConfiguration.setHost("localhost");
+    }
+
+    @AfterEach
+    void tearDown() throws IOException {
+        emailNotifier.destroy();
+        server.close();
+    }
+
+    @Test
+    void shouldPipelineCommandsWhenServerSupportsIt() throws IOException {
+        send(true, true);
+
+        assertThat(server.messages()).hasSize(1);
+        assertThat(envelopeRoundTrip()).filteredOn(command -> command.startsWith("RCPT TO")).hasSize(3);
+        assertThat(server.roundTrips()).filteredOn(commands -> commands.get(0).startsWith("RCPT TO")).isEmpty();
+    }
+
+    @Test
+    void shouldNotPipelineCommandsWhenServerDoesNotSupportIt() throws IOException {
+        send(false, true);
+
+        assertThat(server.messages()).hasSize(1);
+        assertThat(envelopeRoundTrip()).hasSize(1);
+        assertThat(server.roundTrips()).filteredOn(commands -> commands.get(0).startsWith("RCPT TO")).hasSize(3);
+    }
+
+    @Test
+    void shouldNotPipelineCommandsWhenDisabled() throws IOException {
+        send(true, false);
+
+        assertThat(server.messages()).hasSize(1);
+        assertThat(envelopeRoundTrip()).hasSize(1);
+    }
+
+    private void send(final boolean serverPipelining, final boolean pipeliningEnabled) throws IOException {
+        server = new FakeSmtpServer(serverPipelining, ROUND_TRIP_TIME);
+        emailNotifierConfiguration.setPort(server.port());
+
+        emailNotifier = new EmailNotifier(emailNotifierConfiguration);
+        emailNotifier.setTemplatesPath(this.getClass().getResource("/io/gravitee/notifier/email/templates").getPath());
+        setField(emailNotifier, "pipeliningEnabled", pipeliningEnabled);
+        emailNotifier.afterPropertiesSet();
+
+        Vertx.vertx().runOnContext(event -> emailNotifier.send(notification, Map.of()).whenComplete(completeOrFailNow()));
+
+        awaitCompletionAndCheckFailure();
+    }
+
+    /**
+     * The commands sent along with the MAIL FROM command.
+     */
+    private List<String> envelopeRoundTrip() {
+        return server.roundTrips().stream().filter(commands -> commands.get(0).startsWith("MAIL FROM")).findFirst().orElseThrow();
+    }
+}
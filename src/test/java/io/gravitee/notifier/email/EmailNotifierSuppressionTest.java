@@ -0,0 +1,158 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
+
+import com.icegreen.greenmail.configuration.GreenMailConfiguration;
+import com.icegreen.greenmail.junit5.GreenMailExtension;
+import com.icegreen.greenmail.util.ServerSetupTest;
+import io.gravitee.notifier.api.Notification;
+import io.gravitee.notifier.email.configuration.EmailNotifierConfiguration;
+import io.gravitee.notifier.email.suppression.SharedSuppressionStore;
+import io.vertx.core.Vertx;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.RegisterExtension;
+
+/**
+ * Two notifiers sharing a suppression store, as two nodes of a cluster would.
+ *
+ * @author GraviteeSource Team
+ */
+class EmailNotifierSuppressionTest extends AbstractEmailNotifierTest {
+
+    private final SharedSuppressionStore suppressionStore = new SharedSuppressionStore();
+
+    private final Notification notification = new Notification();
+
+    private EmailNotifier firstNode;
+
+    private EmailNotifier secondNode;
+
+    @RegisterExtension
+    static GreenMailExtension greenMail = new GreenMailExtension(ServerSetupTest.SMTP)
+        .withConfiguration(GreenMailConfiguration.aConfig().withDisabledAuthentication())
+        .withPerMethodLifecycle(true);
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        super.setUp();
+
+        notification.setType(EmailNotifier.TYPE);
+        firstNode = node();
+        secondNode = node();
+    }
+
+    @AfterEach
+    void tearDown() {
+        firstNode.destroy();
+        secondNode.destroy();
+    }
+
+    @Test
+    void shouldSendIdenticalEmailOnlyOnce() {
+        Vertx.vertx().runOnContext(event ->
+            firstNode
+                .send(notification, new HashMap<>(Map.of("hook", "API_STOPPED")))
+                .thenCompose(unused -> secondNode.send(notification, new HashMap<>(Map.of("hook", "API_STOPPED"))))
+                .whenComplete(completeOrFailNow())
+        );
+
+        awaitCompletionAndCheckFailure();
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+        assertThat(suppressionStore.size()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldSendEmailsOfDifferentHooks() {
+        Vertx.vertx().runOnContext(event ->
+            firstNode
+                .send(notification, new HashMap<>(Map.of("hook", "API_STOPPED")))
+                .thenCompose(unused -> secondNode.send(notification, new HashMap<>(Map.of("hook", "API_STARTED"))))
+                .whenComplete(completeOrFailNow())
+        );
+
+        awaitCompletionAndCheckFailure();
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(2);
+    }
+
+    @Test
+    void shouldSendEmailWhichCouldNotBeSentByAnotherNode() throws IOException {
+        final EmailNotifier unreachableNode = node(ServerSetupTest.SMTP.getPort() + 1);
+        final Vertx vertx = Vertx.vertx();
+        final CompletableFuture<Void> failedSend = new CompletableFuture<>();
+
+        vertx.runOnContext(event ->
+            unreachableNode
+                .send(notification, new HashMap<>(Map.of("hook", "API_STOPPED")))
+                .whenComplete((result, throwable) -> failedSend.complete(null))
+        );
+        failedSend.join();
+        unreachableNode.destroy();
+
+        vertx.runOnContext(event ->
+            secondNode.send(notification, new HashMap<>(Map.of("hook", "API_STOPPED"))).whenComplete(completeOrFailNow())
+        );
+
+        awaitCompletionAndCheckFailure();
+
+        assertThat(greenMail.getReceivedMessages()).hasSize(1);
+        assertThat(suppressionStore.size()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldRejectUnknownFingerprintComponent() {
+        final EmailNotifier emailNotifier = new EmailNotifier(new EmailNotifierConfiguration());
+        emailNotifier.setTemplatesPath(this.getClass().getResource("/io/gravitee/notifier/email/templates").getPath());
+        setField(emailNotifier, "suppressionEnabled", true);
+        setField(emailNotifier, "suppressionFingerprint", "subject,recipent");
+
+        assertThatThrownBy(emailNotifier::afterPropertiesSet)
+            .isInstanceOf(IllegalArgumentException.class)
+            .hasMessageContaining("recipent");
+    }
+
+    private EmailNotifier node() throws IOException {
+        return node(ServerSetupTest.SMTP.getPort());
+    }
+
+    private EmailNotifier node(final int port) throws IOException {
+        final EmailNotifierConfiguration configuration = new EmailNotifierConfiguration();
+        configuration.setFrom("from@mail.com");
+        configuration.setTo("to@mail.com");
+        configuration.setSubject("subject of email");
+        configuration.setBody("template_sample.html");
+        configuration.setHost(ServerSetupTest.SMTP.getBindAddress());
+        configuration.setPort(port);
+
+        final EmailNotifier emailNotifier = new EmailNotifier(configuration);
+        emailNotifier.setTemplatesPath(this.getClass().getResource("/io/gravitee/notifier/email/templates").getPath());
+        setField(emailNotifier, "suppressionEnabled", true);
+        setField(emailNotifier, "suppressionStore", suppressionStore);
+        emailNotifier.afterPropertiesSet();
+        return emailNotifier;
+    }
+}
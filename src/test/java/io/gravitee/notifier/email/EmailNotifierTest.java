@@ -16,6 +16,7 @@
 package io.gravitee.notifier.email;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.util.ReflectionTestUtils.setField;
 
 import com.icegreen.greenmail.configuration.GreenMailConfiguration;
 import com.icegreen.greenmail.junit5.GreenMailExtension;
@@ -23,17 +24,33 @@ import com.icegreen.greenmail.util.GreenMailUtil;
 import com.icegreen.greenmail.util.ServerSetupTest;
 import io.gravitee.notifier.api.Notification;
 import io.gravitee.notifier.email.configuration.EmailNotifierConfiguration;
+import io.gravitee.notifier.email.configuration.SmtpRelay;
 import io.vertx.core.Vertx;
+import io.vertx.core.net.JksOptions;
+import io.vertx.ext.mail.MailAttachment;
+import io.vertx.ext.mail.MailConfig;
+import io.vertx.ext.mail.MailMessage;
+import jakarta.mail.BodyPart;
 import jakarta.mail.MessagingException;
 import jakarta.mail.internet.MimeMessage;
+import jakarta.mail.internet.MimeMultipart;
 import java.io.IOException;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.junit.jupiter.api.extension.RegisterExtension;
+import org.junit.jupiter.api.io.TempDir;
 import org.mockito.junit.jupiter.MockitoExtension;
 
 /**
@@ -86,9 +103,7 @@ class EmailNotifierTest extends AbstractEmailNotifierTest {
 
                     MimeMessage receivedMessage = greenMail.getReceivedMessages()[0];
 
-                    assertThat(GreenMailUtil.getBody(receivedMessage)).isEqualTo(
-                        "<html>\r\n <head></head>\r\n <body>template_sample.html</body>\r\n</html>"
-                    );
+                    assertThat(GreenMailUtil.getBody(receivedMessage)).isEqualTo("template_sample.html");
 
                     try {
                         assertThat(receivedMessage.getAllRecipients()).hasSize(1);
@@ -117,9 +132,7 @@ class EmailNotifierTest extends AbstractEmailNotifierTest {
                     assertThat(greenMail.getReceivedMessages()).hasSize(2);
                     MimeMessage receivedMessage = greenMail.getReceivedMessages()[1];
 
-                    assertThat(GreenMailUtil.getBody(receivedMessage)).isEqualTo(
-                        "<html>\r\n <head></head>\r\n <body>template_sample.html</body>\r\n</html>"
-                    );
+                    assertThat(GreenMailUtil.getBody(receivedMessage)).isEqualTo("template_sample.html");
                     try {
                         assertThat(receivedMessage.getAllRecipients()).hasSize(2);
                         assertThat(receivedMessage.getAllRecipients()[0]).hasToString("to@mail.com");
@@ -163,6 +176,70 @@ class EmailNotifierTest extends AbstractEmailNotifierTest {
         awaitCompletionAndCheckFailure();
     }
 
+    @Test
+    @DisplayName("Should share one inline part between identical images")
+    void shouldDeduplicateIdenticalImages() throws Exception {
+        emailNotifierConfiguration.setBody(
+            "<img src=\"data:image/png;base64,AQID\" /><img src=\"data:image/png;base64,AQID\" /><img src=\"images/email.svg\" />" +
+            "<img src=\"images/email.svg\" />"
+        );
+
+        MailMessage mailMessage = emailNotifier.prepareMailMessage(parameters);
+
+        assertThat(mailMessage.getInlineAttachment()).hasSize(2);
+        for (MailAttachment attachment : mailMessage.getInlineAttachment()) {
+            String contentId = attachment.getContentId().substring(1, attachment.getContentId().length() - 1);
+            assertThat(mailMessage.getHtml().split("cid:" + contentId, -1)).hasSize(3);
+        }
+    }
+
+    @Test
+    @DisplayName("Should stream images larger than the threshold instead of loading them")
+    void shouldSendEmailWithStreamedImage() throws IOException {
+        setField(emailNotifier, "resourcesStreamThreshold", 100L);
+        emailNotifierConfiguration.setBody("<img src=\"images/email.svg\" />\n<div>test</div>");
+        byte[] image = Files.readAllBytes(Path.of(emailNotifier.getTemplatesPath(), "images", "email.svg"));
+
+        Vertx.vertx().runOnContext(event ->
+            emailNotifier
+                .send(notification, parameters)
+                .whenComplete((unused, throwable) -> {
+                    assertThat(greenMail.getReceivedMessages()).hasSize(1);
+                    assertThat(inlineAttachment(greenMail.getReceivedMessages()[0])).isEqualTo(image);
+                    assertThat(emailNotifier.getResourceCache().size()).isZero();
+                })
+                .whenComplete(completeOrFailNow())
+        );
+
+        awaitCompletionAndCheckFailure();
+    }
+
+    @Test
+    @DisplayName("Should not stream images of emails which may be sent again through another relay")
+    void shouldSendEmailWithLargeImageThroughNextRelay() throws IOException {
+        try (FakeSmtpServer failingServer = new FakeSmtpServer(false, 0, "451 Try again later")) {
+            setField(emailNotifier, "resourcesStreamThreshold", 100L);
+            SmtpRelay relay = new SmtpRelay();
+            relay.setHost(ServerSetupTest.SMTP.getBindAddress());
+            relay.setPort(ServerSetupTest.SMTP.getPort());
+            emailNotifierConfiguration.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+            emailNotifierConfiguration.setPort(failingServer.port());
+            emailNotifierConfiguration.setUsername(null);
+            emailNotifierConfiguration.setPassword(null);
+            emailNotifierConfiguration.setRelays(List.of(relay));
+            emailNotifierConfiguration.setBody("<img src=\"images/email.svg\" />\n<div>test</div>");
+            byte[] image = Files.readAllBytes(Path.of(emailNotifier.getTemplatesPath(), "images", "email.svg"));
+
+            Vertx.vertx().runOnContext(event -> emailNotifier.send(notification, parameters).whenComplete(completeOrFailNow()));
+
+            awaitCompletionAndCheckFailure();
+
+            assertThat(failingServer.messages()).hasSize(1);
+            assertThat(greenMail.getReceivedMessages()).hasSize(1);
+            assertThat(inlineAttachment(greenMail.getReceivedMessages()[0])).isEqualTo(image);
+        }
+    }
+
     @Test
     void shouldSendEmailWithInvalidImage() {
         emailNotifierConfiguration.setBody("<img src=\"../../../../../images/email.svg\" />\n<div>test</div>");
@@ -203,22 +280,7 @@ class EmailNotifierTest extends AbstractEmailNotifierTest {
                     MimeMessage receivedMessage = greenMail.getReceivedMessages()[0];
 
                     try {
-                        assertThat(GreenMailUtil.getBody(receivedMessage)).isEqualTo(
-                            """
-                            <html>\r
-                             <head></head>\r
-                             <body>\r
-                              A test\r
-                              <br>\r
-                              with\r
-                              <br>\r
-                              new\r
-                              <br>\r
-                              line\r
-                              <br>\r
-                             </body>\r
-                            </html>"""
-                        );
+                        assertThat(GreenMailUtil.getBody(receivedMessage)).isEqualTo("A test <br> with <br> new <br> line<br>");
                         assertThat(receivedMessage.getAllRecipients()).hasSize(1);
                         assertThat(receivedMessage.getAllRecipients()[0]).hasToString("to@mail.com");
                         assertThat(receivedMessage.getSubject()).isEqualTo("subject of email");
@@ -231,4 +293,112 @@ class EmailNotifierTest extends AbstractEmailNotifierTest {
 
         awaitCompletionAndCheckFailure();
     }
+
+    @Test
+    @DisplayName("Should render email on the render executor when execution mode is worker")
+    void shouldSendEmailWithWorkerExecutionMode() {
+        setField(emailNotifier, "executionMode", "worker");
+
+        Vertx.vertx().runOnContext(event ->
+            emailNotifier
+                .send(notification, parameters)
+                .whenComplete((unused, throwable) -> {
+                    assertThat(greenMail.getReceivedMessages()).hasSize(1);
+                    assertThat(GreenMailUtil.getBody(greenMail.getReceivedMessages()[0])).isEqualTo("template_sample.html");
+                })
+                .whenComplete(completeOrFailNow())
+        );
+
+        awaitCompletionAndCheckFailure();
+    }
+
+    @Test
+    @DisplayName("Should reuse the mail configuration until it is refreshed after the notifier configuration changes")
+    void shouldMemoizeMailConfig() {
+        MailConfig mailConfig = emailNotifier.prepareMailConfig();
+
+        assertThat(emailNotifier.prepareMailConfig()).isSameAs(mailConfig);
+
+        emailNotifierConfiguration.setPort(2525);
+
+        assertThat(emailNotifier.prepareMailConfig()).isSameAs(mailConfig);
+
+        emailNotifier.refreshMailConfig();
+
+        assertThat(emailNotifier.prepareMailConfig()).isNotSameAs(mailConfig);
+        assertThat(emailNotifier.prepareMailConfig().getPort()).isEqualTo(2525);
+    }
+
+    @Test
+    @DisplayName("Should keep the clients of a replaced mail configuration until their sends are complete")
+    void shouldCompleteSendsInProgressWhenMailConfigChanges() throws IOException {
+        try (FakeSmtpServer slowServer = new FakeSmtpServer(false, 50)) {
+            emailNotifierConfiguration.setHost(InetAddress.getLoopbackAddress().getHostAddress());
+            emailNotifierConfiguration.setPort(slowServer.port());
+            emailNotifierConfiguration.setUsername(null);
+            emailNotifierConfiguration.setPassword(null);
+
+            Vertx.vertx().runOnContext(event -> {
+                CompletableFuture<Void> first = emailNotifier.send(notification, parameters);
+                setField(emailNotifier, "poolKeepAliveTimeout", 60);
+                emailNotifier.refreshMailConfig();
+                CompletableFuture<Void> second = emailNotifier.send(notification, parameters);
+                CompletableFuture.allOf(first, second).whenComplete(completeOrFailNow());
+            });
+
+            awaitCompletionAndCheckFailure();
+
+            assertThat(slowServer.messages()).hasSize(2);
+        }
+    }
+
+    @Test
+    @DisplayName("Should build the mail configuration from the settings it has been resolved from")
+    void shouldRefreshMailConfigWhenAuthMethodsChange() {
+        emailNotifierConfiguration.setAuthMethods(new HashSet<>(Set.of("plain")));
+        assertThat(emailNotifier.prepareMailConfig().getAuthMethods()).isEqualTo("PLAIN");
+
+        emailNotifierConfiguration.getAuthMethods().clear();
+        emailNotifier.refreshMailConfig();
+
+        assertThat(emailNotifier.prepareMailConfig().getAuthMethods()).isNull();
+    }
+
+    @Test
+    @DisplayName("Should load the key store once and reload it when refreshed after the file changes")
+    void shouldReloadKeyStoreWhenModified(@TempDir Path directory) throws IOException {
+        Path keyStore = Files.write(directory.resolve("keystore.jks"), new byte[] { 1, 2, 3 });
+        emailNotifierConfiguration.setSslKeyStore(keyStore.toString());
+        emailNotifierConfiguration.setSslKeyStorePassword("secret");
+
+        MailConfig mailConfig = emailNotifier.prepareMailConfig();
+        JksOptions jksOptions = (JksOptions) mailConfig.getKeyCertOptions();
+        assertThat(jksOptions.getValue().getBytes()).containsExactly(1, 2, 3);
+        assertThat(jksOptions.getPassword()).isEqualTo("secret");
+        assertThat(emailNotifier.prepareMailConfig()).isSameAs(mailConfig);
+
+        Files.write(keyStore, new byte[] { 4, 5 });
+        Files.setLastModifiedTime(keyStore, FileTime.fromMillis(Files.getLastModifiedTime(keyStore).toMillis() + 1000));
+
+        assertThat(emailNotifier.prepareMailConfig()).isSameAs(mailConfig);
+
+        emailNotifier.refreshMailConfig();
+
+        assertThat(((JksOptions) emailNotifier.prepareMailConfig().getKeyCertOptions()).getValue().getBytes()).containsExactly(4, 5);
+    }
+
+    private static byte[] inlineAttachment(final MimeMessage message) {
+        try {
+            MimeMultipart multipart = (MimeMultipart) message.getContent();
+            for (int i = 0; i < multipart.getCount(); i++) {
+                BodyPart part = multipart.getBodyPart(i);
+                if (part.getHeader("Content-ID") != null) {
+                    return part.getInputStream().readAllBytes();
+                }
+            }
+            return null;
+        } catch (MessagingException | IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
 }
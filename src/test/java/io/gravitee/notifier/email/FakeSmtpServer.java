@@ -0,0 +1,172 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Minimal SMTP server simulating the latency of a remote relay: every round trip, i.e. every group of commands the
+ * client sends before waiting for a reply, is delayed by the configured round trip time. The commands of each round
+ * trip are recorded, and the content of the messages is answered with the configured reply.
+ *
+ * @author GraviteeSource Team
+ */
+class FakeSmtpServer implements AutoCloseable {
+
+    private static final String EHLO_REPLY = "250-fake\r\n250 8BITMIME\r\n";
+
+    private static final String EHLO_PIPELINING_REPLY = "250-fake\r\n250-PIPELINING\r\n250 8BITMIME\r\n";
+
+    private final ServerSocket serverSocket;
+
+    private final boolean pipelining;
+
+    private final long roundTripTime;
+
+    private final String messageReply;
+
+    private final List<List<String>> roundTrips = new CopyOnWriteArrayList<>();
+
+    private final List<String> messages = new CopyOnWriteArrayList<>();
+
+    FakeSmtpServer(final boolean pipelining, final long roundTripTime) throws IOException {
+        this(pipelining, roundTripTime, "250 OK queued");
+    }
+
+    FakeSmtpServer(final boolean pipelining, final long roundTripTime, final String messageReply) throws IOException {
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        this.pipelining = pipelining;
+        this.roundTripTime = roundTripTime;
+        this.messageReply = messageReply;
+
+        final Thread thread = new Thread(this::accept, "fake-smtp-server");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    int port() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * The commands received, grouped by round trip. The content of the messages is not recorded.
+     */
+    List<List<String>> roundTrips() {
+        return roundTrips;
+    }
+
+    List<String> messages() {
+        return messages;
+    }
+
+    private void accept() {
+        while (!serverSocket.isClosed()) {
+            try {
+                final Socket socket = serverSocket.accept();
+                final Thread thread = new Thread(() -> serve(socket), "fake-smtp-session");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (final IOException ex) {
+                return;
+            }
+        }
+    }
+
+    private void serve(final Socket socket) {
+        try (
+            socket;
+            BufferedReader reader = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.US_ASCII))
+        ) {
+            final OutputStream out = socket.getOutputStream();
+            reply(out, "220 fake ESMTP");
+
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // The first command of the round trip has arrived, the others are sent along without waiting
+                sleep();
+                final List<String> commands = new ArrayList<>();
+                commands.add(line);
+                while (reader.ready()) {
+                    commands.add(reader.readLine());
+                }
+                roundTrips.add(commands);
+
+                final StringBuilder replies = new StringBuilder();
+                for (String command : commands) {
+                    final String verb = command.length() < 4 ? command : command.substring(0, 4).toUpperCase(Locale.ROOT);
+                    switch (verb) {
+                        case "EHLO" -> replies.append(pipelining ? EHLO_PIPELINING_REPLY : EHLO_REPLY);
+                        case "DATA" -> replies.append("354 End data with <CR><LF>.<CR><LF>\r\n");
+                        case "QUIT" -> {
+                            reply(out, "221 Bye");
+                            return;
+                        }
+                        default -> replies.append("250 OK\r\n");
+                    }
+                }
+                out.write(replies.toString().getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+
+                if (commands.get(commands.size() - 1).equalsIgnoreCase("DATA")) {
+                    readMessage(reader);
+                    sleep();
+                    reply(out, messageReply);
+                }
+            }
+        } catch (final IOException ex) {
+            // Connection closed by the client
+        }
+    }
+
+    private void readMessage(final BufferedReader reader) throws IOException {
+        final StringBuilder message = new StringBuilder();
+        String line;
+        while ((line = reader.readLine()) != null && !line.equals(".")) {
+            message.append(line).append("\r\n");
+        }
+        messages.add(message.toString());
+        roundTrips.add(List.of("<message>"));
+    }
+
+    private void sleep() {
+        try {
+            Thread.sleep(roundTripTime);
+        } catch (final InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void reply(final OutputStream out, final String reply) throws IOException {
+        out.write((reply + "\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.address;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class RecipientsTest {
+
+    @Test
+    void shouldSplitOnSeparatorsAndDropEmptyEntries() {
+        Recipients.Result result = Recipients.scan(" john@doe.com,,jane@doe.com ;\n\tjack@doe.com;");
+
+        assertThat(result.valid()).containsExactly("john@doe.com", "jane@doe.com", "jack@doe.com");
+        assertThat(result.invalid()).isEmpty();
+    }
+
+    @Test
+    void shouldRemoveDuplicates() {
+        assertThat(Recipients.scan("john@doe.com, John@Doe.com <john@doe.com>").valid()).containsExactly("john@doe.com");
+    }
+
+    @Test
+    void shouldValidateMailboxSyntax() {
+        Recipients.Result result = Recipients.scan(
+            "first.last+tag@sub.example.com user@[192.168.0.1] jörg@bücher.de " +
+            "john noat.example.com .dot@example.com dot.@example.com a..b@example.com user@-example.com user@example..com user@"
+        );
+
+        assertThat(result.valid()).containsExactly("first.last+tag@sub.example.com", "user@[192.168.0.1]", "jörg@bücher.de");
+        assertThat(result.invalid()).containsExactly(
+            "john",
+            "noat.example.com",
+            ".dot@example.com",
+            "dot.@example.com",
+            "a..b@example.com",
+            "user@-example.com",
+            "user@example..com",
+            "user@"
+        );
+    }
+
+    @Test
+    void shouldRejectTooLongLocalPart() {
+        assertThat(Recipients.scan("a".repeat(65) + "@example.com").valid()).isEmpty();
+    }
+
+    @Test
+    void shouldCacheResultsByList() {
+        Recipients recipients = new Recipients(10);
+
+        assertThat(recipients.parse("john@doe.com,jane@doe.com")).isSameAs(recipients.parse("john@doe.com,jane@doe.com"));
+    }
+}
@@ -0,0 +1,157 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.gravitee.notifier.email.configuration.NotificationPriority;
+import io.vertx.core.Vertx;
+import io.vertx.ext.mail.MailMessage;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class MailBatcherTest {
+
+    private static final MailSender SENDER = message -> CompletableFuture.completedFuture(null);
+
+    @Test
+    void shouldNotCoalesceWhenDisabled() {
+        MailBatcher batcher = batcher(false, false, 10);
+
+        List<MailBatcher.Group> groups = batcher.coalesce(List.of(mail("key", "a@mail.com"), mail("key", "b@mail.com")));
+
+        assertThat(groups).hasSize(2);
+    }
+
+    @Test
+    void shouldCoalesceMessagesWithSameContent() {
+        MailBatcher batcher = batcher(true, false, 10);
+
+        List<MailBatcher.Group> groups = batcher.coalesce(
+            List.of(
+                mail("key", "a@mail.com"),
+                mail("other", "b@mail.com"),
+                mail("key", "b@mail.com", "a@mail.com"),
+                mail(null, "c@mail.com")
+            )
+        );
+
+        assertThat(groups).hasSize(3);
+        assertThat(groups.get(0).size()).isEqualTo(2);
+        assertThat(groups.get(0).recipients()).containsExactly("a@mail.com", "b@mail.com");
+        assertThat(groups.get(0).message(false).getTo()).containsExactly("a@mail.com", "b@mail.com");
+    }
+
+    @Test
+    void shouldCoalesceRecipientsAsBlindCopies() {
+        MailBatcher batcher = batcher(true, true, 10);
+
+        List<MailBatcher.Group> groups = batcher.coalesce(List.of(mail("key", "a@mail.com"), mail("key", "b@mail.com")));
+
+        MailMessage message = groups.get(0).message(true);
+        assertThat(message.getTo()).isNullOrEmpty();
+        assertThat(message.getBcc()).containsExactly("a@mail.com", "b@mail.com");
+    }
+
+    @Test
+    void shouldLimitRecipientsOfCoalescedMessage() {
+        MailBatcher batcher = batcher(true, false, 2);
+
+        List<MailBatcher.Group> groups = batcher.coalesce(
+            List.of(mail("key", "a@mail.com"), mail("key", "b@mail.com"), mail("key", "a@mail.com"), mail("key", "c@mail.com"))
+        );
+
+        assertThat(groups).hasSize(2);
+        assertThat(groups.get(0).recipients()).containsExactly("a@mail.com", "b@mail.com");
+        assertThat(groups.get(0).size()).isEqualTo(3);
+        assertThat(groups.get(1).recipients()).containsExactly("c@mail.com");
+    }
+
+    @Test
+    void shouldNotCoalesceMessagesOfDifferentSenders() {
+        MailBatcher batcher = batcher(true, false, 10);
+        MailSender other = message -> CompletableFuture.completedFuture(null);
+
+        List<MailBatcher.Group> groups = batcher.coalesce(
+            List.of(mail("key", "a@mail.com"), sentThrough(other, "key", "b@mail.com"), mail("key", "c@mail.com"))
+        );
+
+        assertThat(groups).hasSize(2);
+        assertThat(groups.get(0).recipients()).containsExactly("a@mail.com", "c@mail.com");
+        assertThat(groups.get(1).recipients()).containsExactly("b@mail.com");
+    }
+
+    @Test
+    void shouldSendCoalescedGroupsByPriority() {
+        Vertx vertx = Vertx.vertx();
+        try {
+            List<String> sent = new CopyOnWriteArrayList<>();
+            MailSender sender = message -> {
+                sent.add(message.getSubject());
+                return CompletableFuture.completedFuture(null);
+            };
+            MailBatcher batcher = new MailBatcher(vertx, new MailBatcher.Options(4, 60_000, true, false, 10));
+
+            batcher.submit(message("low", "a@mail.com"), "low", NotificationPriority.LOW, sender);
+            batcher.submit(message("normal", "a@mail.com"), "normal", NotificationPriority.NORMAL, sender);
+            batcher.submit(message("low", "b@mail.com"), "low", NotificationPriority.LOW, sender);
+            CompletableFuture<?> high = batcher.submit(message("high", "a@mail.com"), "high", NotificationPriority.HIGH, sender);
+
+            assertThat(high).isCompleted();
+            assertThat(sent).containsExactly("high", "normal", "low");
+        } finally {
+            vertx.close();
+        }
+    }
+
+    @Test
+    void shouldNotCoalesceMessagesOfDifferentPriorities() {
+        MailBatcher batcher = batcher(true, false, 10);
+
+        List<MailBatcher.Group> groups = batcher.coalesce(
+            List.of(mail("key", "a@mail.com"), withPriority(NotificationPriority.HIGH, "key", "b@mail.com"))
+        );
+
+        assertThat(groups).hasSize(2);
+        assertThat(groups.get(0).priority()).isEqualTo(NotificationPriority.HIGH);
+        assertThat(groups.get(0).recipients()).containsExactly("b@mail.com");
+    }
+
+    private static MailBatcher batcher(boolean coalesce, boolean bcc, int maxRecipients) {
+        return new MailBatcher(null, new MailBatcher.Options(100, 100, coalesce, bcc, maxRecipients));
+    }
+
+    private static MailBatcher.PendingMail mail(String key, String... to) {
+        return sentThrough(SENDER, key, to);
+    }
+
+    private static MailBatcher.PendingMail sentThrough(MailSender mailSender, String key, String... to) {
+        return new MailBatcher.PendingMail(message("subject", to), key, NotificationPriority.NORMAL, mailSender, new CompletableFuture<>());
+    }
+
+    private static MailBatcher.PendingMail withPriority(NotificationPriority priority, String key, String... to) {
+        return new MailBatcher.PendingMail(message("subject", to), key, priority, SENDER, new CompletableFuture<>());
+    }
+
+    private static MailMessage message(String subject, String... to) {
+        return new MailMessage().setFrom("from@mail.com").setTo(List.of(to)).setSubject(subject).setHtml("body");
+    }
+}
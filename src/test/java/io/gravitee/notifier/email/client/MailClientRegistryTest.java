@@ -0,0 +1,112 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.vertx.core.Vertx;
+import io.vertx.ext.mail.MailConfig;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class MailClientRegistryTest {
+
+    private Vertx vertx;
+
+    private MailClientRegistry registry;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        registry = new MailClientRegistry();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    void shouldShareClientForSameConfiguration() {
+        MailClientRegistry.Lease first = registry.acquire(vertx, new MailConfig().setHostname("localhost").setPort(25));
+        MailClientRegistry.Lease second = registry.acquire(vertx, new MailConfig().setHostname("localhost").setPort(25));
+
+        assertThat(second.client()).isSameAs(first.client());
+        assertThat(registry.size()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotShareClientForDifferentConfiguration() {
+        MailClientRegistry.Lease first = registry.acquire(vertx, new MailConfig().setHostname("localhost").setPort(25));
+        MailClientRegistry.Lease second = registry.acquire(vertx, new MailConfig().setHostname("localhost").setPort(587));
+
+        assertThat(second.client()).isNotSameAs(first.client());
+        assertThat(registry.size()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldCloseClientOnceAllLeasesAreReleased() {
+        MailConfig mailConfig = new MailConfig().setHostname("localhost").setPort(25);
+        MailClientRegistry.Lease first = registry.acquire(vertx, mailConfig);
+        MailClientRegistry.Lease second = registry.acquire(vertx, mailConfig);
+
+        first.release();
+        first.release();
+        assertThat(registry.size()).isEqualTo(1);
+
+        second.release();
+        assertThat(registry.size()).isZero();
+    }
+
+    @Test
+    void shouldShareBatcherOnlyForSameSettings() {
+        MailConfig mailConfig = new MailConfig().setHostname("localhost").setPort(25);
+        MailClientRegistry.Lease first = registry.acquire(vertx, mailConfig);
+        MailClientRegistry.Lease second = registry.acquire(vertx, mailConfig);
+
+        MailBatcher batcher = first.batcher(new MailBatcher.Options(50, 100, true, true, 50));
+
+        assertThat(second.batcher(new MailBatcher.Options(50, 100, true, true, 50))).isSameAs(batcher);
+        assertThat(second.batcher(new MailBatcher.Options(50, 100, true, false, 50))).isNotSameAs(batcher);
+    }
+
+    @Test
+    void shouldNotifyCreationOfBatcherOnce() {
+        MailConfig mailConfig = new MailConfig().setHostname("localhost").setPort(25);
+        MailClientRegistry.Lease first = registry.acquire(vertx, mailConfig);
+        MailClientRegistry.Lease second = registry.acquire(vertx, mailConfig);
+        List<MailBatcher> created = new ArrayList<>();
+
+        MailBatcher batcher = first.batcher(new MailBatcher.Options(50, 100, true, true, 50), created::add);
+        second.batcher(new MailBatcher.Options(50, 100, true, true, 50), created::add);
+
+        assertThat(created).containsExactly(batcher);
+    }
+
+    @Test
+    void shouldMatchOnlySameConfiguration() {
+        MailClientRegistry.Lease lease = registry.acquire(vertx, new MailConfig().setHostname("localhost").setPort(25));
+
+        assertThat(lease.matches(vertx, new MailConfig().setHostname("localhost").setPort(25))).isTrue();
+        assertThat(lease.matches(vertx, new MailConfig().setHostname("localhost").setPort(587))).isFalse();
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.digest;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class DigestAggregatorTest {
+
+    private final ConcurrentLinkedQueue<DigestAggregator.Digest<String>> digests = new ConcurrentLinkedQueue<>();
+
+    @Test
+    void shouldFlushDigestWhenFull() {
+        DigestAggregator<String> aggregator = new DigestAggregator<>(new DigestAggregator.Options(2, 60_000), digests::add);
+
+        aggregator.add("john@doe.com", "first");
+        aggregator.add("jane@doe.com", "other");
+        aggregator.add("john@doe.com", "second");
+
+        assertThat(digests).containsExactly(new DigestAggregator.Digest<>("john@doe.com", List.of("first", "second")));
+        assertThat(aggregator.pending()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldFlushDigestAfterMaxDelay() throws InterruptedException {
+        CountDownLatch flushed = new CountDownLatch(1);
+        DigestAggregator<String> aggregator = new DigestAggregator<>(
+            new DigestAggregator.Options(100, 50),
+            digest -> {
+                digests.add(digest);
+                flushed.countDown();
+            }
+        );
+
+        aggregator.add("john@doe.com", "first");
+
+        assertThat(flushed.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(digests).containsExactly(new DigestAggregator.Digest<>("john@doe.com", List.of("first")));
+        assertThat(aggregator.pending()).isZero();
+    }
+
+    @Test
+    void shouldFlushAllDigests() {
+        DigestAggregator<String> aggregator = new DigestAggregator<>(new DigestAggregator.Options(100, 60_000), digests::add);
+        aggregator.add("john@doe.com", "first");
+        aggregator.add("jane@doe.com", "second");
+
+        aggregator.flushAll();
+
+        assertThat(digests).hasSize(2);
+        assertThat(aggregator.pending()).isZero();
+    }
+
+    @Test
+    void shouldNotLoseItemsAddedConcurrently() throws InterruptedException {
+        DigestAggregator<String> aggregator = new DigestAggregator<>(new DigestAggregator.Options(7, 60_000), digests::add);
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        for (int i = 0; i < 4000; i++) {
+            final String item = "item-" + i;
+            executor.execute(() -> aggregator.add("recipient-" + (item.hashCode() & 3), item));
+        }
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS)).isTrue();
+
+        aggregator.flushAll();
+
+        assertThat(digests.stream().mapToInt(digest -> digest.items().size()).sum()).isEqualTo(4000);
+    }
+}
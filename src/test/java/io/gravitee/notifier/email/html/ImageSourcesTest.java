@@ -0,0 +1,76 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.html;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class ImageSourcesTest {
+
+    private static final ImageSources.Rewriter TO_CID = src -> src.startsWith("http") ? null : "cid:" + src;
+
+    @Test
+    void shouldDetectImage() {
+        assertThat(ImageSources.hasImage("<div><IMG src=\"logo.png\"></div>")).isTrue();
+        assertThat(ImageSources.hasImage("<div>test</div>")).isFalse();
+    }
+
+    @Test
+    void shouldKeepDocumentWithoutImage() throws Exception {
+        String html = "<div>test</div>";
+
+        assertThat(ImageSources.rewrite(html, TO_CID)).isSameAs(html);
+    }
+
+    @Test
+    void shouldRewriteQuotedSources() throws Exception {
+        String html = "<img src=\"images/logo.png\" />\n<img alt='x' SRC='data:image/png;base64,AA=='>";
+
+        assertThat(ImageSources.rewrite(html, TO_CID)).isEqualTo(
+            "<img src=\"cid:images/logo.png\" />\n<img alt='x' SRC='cid:data:image/png;base64,AA=='>"
+        );
+    }
+
+    @Test
+    void shouldRewriteUnquotedSource() throws Exception {
+        assertThat(ImageSources.rewrite("<img src=logo.png>", TO_CID)).isEqualTo("<img src=\"cid:logo.png\">");
+    }
+
+    @Test
+    void shouldKeepSourceWhenRewriterReturnsNull() throws Exception {
+        assertThat(ImageSources.rewrite("<img src=\"http://host/logo.png\"><img src = \"logo.png\"/>", TO_CID)).isEqualTo(
+            "<img src=\"http://host/logo.png\"><img src = \"cid:logo.png\"/>"
+        );
+    }
+
+    @Test
+    void shouldIgnoreOtherTagsAndAttributes() throws Exception {
+        assertThat(ImageSources.rewrite("<imgx src=\"a.png\"><img data-src=\"b.png\" src=\"c.png\">", TO_CID)).isEqualTo(
+            "<imgx src=\"a.png\"><img data-src=\"b.png\" src=\"cid:c.png\">"
+        );
+    }
+
+    @Test
+    void shouldIgnoreImagesInComments() throws Exception {
+        assertThat(ImageSources.rewrite("<!-- <img src=\"a.png\"> --><img src=\"b.png\">", TO_CID)).isEqualTo(
+            "<!-- <img src=\"a.png\"> --><img src=\"cid:b.png\">"
+        );
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class SmtpReplyCodesTest {
+
+    @Test
+    void shouldExtractReplyCodeFromCauseChain() {
+        Throwable error = new RuntimeException("send failed", new IllegalStateException("sender address not accepted: 553 5.1.8 Rejected"));
+
+        assertThat(SmtpReplyCodes.of(error)).isEqualTo("553");
+    }
+
+    @Test
+    void shouldReturnNullWithoutReplyCode() {
+        assertThat(SmtpReplyCodes.of(new RuntimeException("Connection refused: localhost/127.0.0.1:1025"))).isNull();
+    }
+
+    @Test
+    void shouldNotMistakeAddressesForReplyCodes() {
+        assertThat(SmtpReplyCodes.of(new RuntimeException("Connection refused: mail.example.com/192.168.254.25:2525"))).isNull();
+    }
+}
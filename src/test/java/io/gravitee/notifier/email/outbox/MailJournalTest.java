@@ -0,0 +1,89 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author GraviteeSource Team
+ */
+class MailJournalTest {
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void shouldReadRecordsInOrder() throws IOException {
+        try (MailJournal journal = new MailJournal(directory.resolve("outbox.journal"), 1024)) {
+            journal.append(bytes("first"));
+            journal.append(bytes("second"));
+
+            assertThat(journal.peek()).isEqualTo(bytes("first"));
+            journal.remove();
+            assertThat(journal.peek()).isEqualTo(bytes("second"));
+            journal.remove();
+            assertThat(journal.peek()).isNull();
+            assertThat(journal.isEmpty()).isTrue();
+        }
+    }
+
+    @Test
+    void shouldKeepRecordsAcrossReopening() throws IOException {
+        Path file = directory.resolve("outbox.journal");
+        try (MailJournal journal = new MailJournal(file, 1024)) {
+            journal.append(bytes("first"));
+            journal.append(bytes("second"));
+            journal.remove();
+        }
+
+        try (MailJournal journal = new MailJournal(file, 1024)) {
+            assertThat(journal.peek()).isEqualTo(bytes("second"));
+            assertThat(journal.size()).isEqualTo(Integer.BYTES + 6);
+            assertThat(journal.count()).isEqualTo(1);
+        }
+    }
+
+    @Test
+    void shouldRejectRecordWhenFull() throws IOException {
+        try (MailJournal journal = new MailJournal(directory.resolve("outbox.journal"), MailJournal.HEADER_SIZE + 20)) {
+            assertThat(journal.append(bytes("0123456789"))).isTrue();
+            assertThat(journal.append(bytes("0123456789"))).isFalse();
+        }
+    }
+
+    @Test
+    void shouldReclaimConsumedRecords() throws IOException {
+        try (MailJournal journal = new MailJournal(directory.resolve("outbox.journal"), MailJournal.HEADER_SIZE + 20)) {
+            journal.append(bytes("first"));
+            journal.append(bytes("second"));
+            journal.remove();
+
+            assertThat(journal.append(bytes("third"))).isTrue();
+            journal.remove();
+            assertThat(journal.peek()).isEqualTo(bytes("third"));
+        }
+    }
+
+    private static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.outbox;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.gravitee.notifier.email.client.MailSender;
+import io.gravitee.notifier.email.configuration.NotificationPriority;
+import io.vertx.core.Vertx;
+import io.vertx.ext.mail.MailMessage;
+import io.vertx.ext.mail.MailResult;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author GraviteeSource Team
+ */
+class MailOutboxTest {
+
+    private static final MailOutbox.Options OPTIONS = new MailOutbox.Options(64 * 1024, 3, 10, 100);
+
+    @TempDir
+    Path directory;
+
+    private final List<MailOutbox> outboxes = new ArrayList<>();
+
+    private Vertx vertx;
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+    }
+
+    @AfterEach
+    void tearDown() {
+        outboxes.forEach(MailOutbox::release);
+        vertx.close();
+    }
+
+    @Test
+    void shouldDeliverMessagesWithTheSenderOfTheirPriority() {
+        RecordingRoute route = new RecordingRoute();
+        MailOutbox outbox = outbox(route);
+
+        outbox.offer(message("first"), NotificationPriority.LOW, null);
+        outbox.offer(message("second"), NotificationPriority.HIGH, null);
+        outbox.offer(message("third"), NotificationPriority.LOW, null);
+
+        awaitEmpty(outbox);
+        assertThat(route.sent).containsExactly("LOW first", "HIGH second", "LOW third");
+    }
+
+    @Test
+    void shouldDeliverMessagesJournaledWithoutPriorityAsNormal() throws IOException {
+        try (MailJournal journal = new MailJournal(directory.resolve("outbox.journal"), 64 * 1024)) {
+            journal.append(message("legacy").toJson().toBuffer().getBytes());
+        }
+        RecordingRoute route = new RecordingRoute();
+        MailOutbox outbox = outbox(route);
+
+        outbox.offer(message("current"), NotificationPriority.HIGH, null);
+
+        awaitEmpty(outbox);
+        assertThat(route.sent).containsExactly("NORMAL legacy", "HIGH current");
+    }
+
+    @Test
+    void shouldDeliverMessagesLeftInJournalOnOpen() throws IOException {
+        Path file = directory.resolve("pending.journal");
+        try (MailJournal pending = new MailJournal(file, 64 * 1024)) {
+            pending.append(message("pending").toJson().toBuffer().getBytes());
+        }
+        RecordingRoute route = new RecordingRoute();
+
+        MailOutbox outbox = MailOutbox.open(vertx, file, OPTIONS, "route", () -> route);
+
+        awaitEmpty(outbox);
+        assertThat(route.sent).containsExactly("NORMAL pending");
+        outbox.release();
+    }
+
+    @Test
+    void shouldReleaseRouteOnceReleasedAndDrained() {
+        RecordingRoute route = new RecordingRoute();
+        MailOutbox outbox = MailOutbox.open(vertx, directory.resolve("released.journal"), OPTIONS, "route", () -> route);
+
+        outbox.offer(message("first"), NotificationPriority.NORMAL, null);
+        outbox.release();
+
+        awaitEmpty(outbox);
+        assertThat(route.sent).containsExactly("NORMAL first");
+        assertThat(route.released).isTrue();
+    }
+
+    @Test
+    void shouldReleasePreviousRouteOnReroute() {
+        RecordingRoute first = new RecordingRoute();
+        RecordingRoute second = new RecordingRoute();
+        MailOutbox outbox = outbox(first);
+
+        outbox.reroute("same", () -> second);
+        outbox.reroute("other", () -> second);
+        outbox.offer(message("message"), NotificationPriority.NORMAL, null);
+
+        awaitEmpty(outbox);
+        assertThat(first.released).isTrue();
+        assertThat(first.sent).isEmpty();
+        assertThat(second.sent).containsExactly("NORMAL message");
+    }
+
+    @Test
+    void shouldRefuseMessagesOnceClosed() {
+        RecordingRoute route = new RecordingRoute();
+        MailOutbox outbox = MailOutbox.open(vertx, directory.resolve("closed.journal"), OPTIONS, "route", () -> route);
+        outbox.release();
+
+        assertThat(outbox.offer(message("late"), NotificationPriority.NORMAL, null)).isFalse();
+        assertThat(route.sent).isEmpty();
+        assertThat(route.released).isTrue();
+    }
+
+    @Test
+    void shouldForgetFingerprintOfDeadLetters() {
+        RecordingRoute route = new RecordingRoute(true);
+        MailOutbox outbox = outbox(route);
+
+        outbox.offer(message("failing"), NotificationPriority.NORMAL, "fingerprint");
+        outbox.offer(message("unsuppressed"), NotificationPriority.NORMAL, null);
+
+        awaitEmpty(outbox);
+        assertThat(route.sent).hasSize(6);
+        assertThat(route.deadLettered).containsExactly("fingerprint");
+        awaitDeadLetters(directory.resolve("outbox.journal.dead"));
+    }
+
+    private MailOutbox outbox(final MailOutbox.Route route) {
+        MailOutbox outbox = MailOutbox.open(vertx, directory.resolve("outbox.journal"), OPTIONS, "same", () -> route);
+        outboxes.add(outbox);
+        return outbox;
+    }
+
+    private static MailMessage message(final String subject) {
+        return new MailMessage().setFrom("from@mail.com").setTo("to@mail.com").setSubject(subject).setText("body");
+    }
+
+    private static class RecordingRoute implements MailOutbox.Route {
+
+        private final List<String> sent = new CopyOnWriteArrayList<>();
+        private final List<String> deadLettered = new CopyOnWriteArrayList<>();
+        private final boolean failing;
+        private volatile boolean released;
+
+        RecordingRoute() {
+            this(false);
+        }
+
+        RecordingRoute(final boolean failing) {
+            this.failing = failing;
+        }
+
+        @Override
+        public MailSender sender(final NotificationPriority priority) {
+            return message -> {
+                sent.add(priority + " " + message.getSubject());
+                return failing
+                    ? CompletableFuture.failedFuture(new IllegalStateException("Unable to send " + message.getSubject()))
+                    : CompletableFuture.completedFuture(new MailResult().setMessageID(message.getSubject()));
+            };
+        }
+
+        @Override
+        public void deadLettered(final String fingerprint) {
+            deadLettered.add(fingerprint);
+        }
+
+        @Override
+        public void release() {
+            released = true;
+        }
+    }
+
+    private static void awaitDeadLetters(final Path deadLetterFile) {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (!Files.exists(deadLetterFile) && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(deadLetterFile).exists();
+    }
+
+        private static void awaitEmpty(final MailOutbox outbox) {
+        final long deadline = System.currentTimeMillis() + 5000;
+        while (outbox.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertThat(outbox.size()).isZero();
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.relay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class RelayHealthTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final RelayHealth health = new RelayHealth(new RelayHealth.Options(2, 1000), clock::get);
+
+    @Test
+    void shouldOpenCircuitAfterConsecutiveFailures() {
+        assertThat(health.tryAcquire()).isTrue();
+        health.failure();
+        assertThat(health.isOpen()).isFalse();
+
+        assertThat(health.tryAcquire()).isTrue();
+        health.failure();
+
+        assertThat(health.isOpen()).isTrue();
+        assertThat(health.tryAcquire()).isFalse();
+        assertThat(health.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldLetSingleProbeThroughOnceOpenDurationElapsed() {
+        openCircuit();
+        clock.addAndGet(1000);
+
+        assertThat(health.tryAcquire()).isTrue();
+        assertThat(health.tryAcquire()).isFalse();
+
+        health.success(500);
+
+        assertThat(health.isOpen()).isFalse();
+        assertThat(health.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void shouldReopenCircuitWhenProbeFails() {
+        openCircuit();
+        clock.addAndGet(1000);
+
+        assertThat(health.tryAcquire()).isTrue();
+        health.failure();
+
+        assertThat(health.tryAcquire()).isFalse();
+        clock.addAndGet(1000);
+        assertThat(health.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void shouldLetAnotherProbeThroughWhenProbeIsCancelled() {
+        openCircuit();
+        clock.addAndGet(1000);
+
+        assertThat(health.tryAcquire()).isTrue();
+        health.cancel();
+
+        assertThat(health.isOpen()).isTrue();
+        assertThat(health.inFlight()).isZero();
+        assertThat(health.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void shouldAverageLatency() {
+        health.tryAcquire();
+        health.success(1000);
+        health.tryAcquire();
+        health.success(2000);
+
+        assertThat(health.latencyEwma()).isEqualTo(1200);
+    }
+
+    private void openCircuit() {
+        for (int i = 0; i < 2; i++) {
+            health.tryAcquire();
+            health.failure();
+        }
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.relay;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.gravitee.notifier.email.client.MailSender;
+import io.gravitee.notifier.email.configuration.RelayStrategy;
+import io.vertx.ext.mail.MailMessage;
+import io.vertx.ext.mail.MailResult;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class RelayRouterTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final List<String> attempts = new ArrayList<>();
+
+    @Test
+    void shouldFailOverOnConnectionError() {
+        RelayRouter router = new RelayRouter(
+            RelayStrategy.FAILOVER,
+            List.of(relay("primary", 1, failing("Connection refused")), relay("secondary", 1, succeeding()))
+        );
+
+        assertThat(router.send(new MailMessage()).toCompletableFuture().join().getMessageID()).isEqualTo("secondary");
+        assertThat(attempts).containsExactly("primary", "secondary");
+    }
+
+    @Test
+    void shouldFailOverOnTransientReply() {
+        RelayRouter router = new RelayRouter(
+            RelayStrategy.FAILOVER,
+            List.of(relay("primary", 1, failing("421 4.7.0 Try again later")), relay("secondary", 1, succeeding()))
+        );
+
+        assertThat(router.send(new MailMessage()).toCompletableFuture().join().getMessageID()).isEqualTo("secondary");
+    }
+
+    @Test
+    void shouldNotFailOverOnPermanentReply() {
+        RelayRouter router = new RelayRouter(
+            RelayStrategy.FAILOVER,
+            List.of(relay("primary", 1, failing("550 5.1.1 User unknown")), relay("secondary", 1, succeeding()))
+        );
+
+        assertThatThrownBy(() -> router.send(new MailMessage()).toCompletableFuture().join())
+            .isInstanceOf(CompletionException.class)
+            .hasMessageContaining("550");
+        assertThat(attempts).containsExactly("primary");
+    }
+
+    @Test
+    void shouldSkipRelayWithOpenCircuit() {
+        RelayRouter.Relay primary = relay("primary", 1, succeeding());
+        primary.health().tryAcquire();
+        primary.health().failure();
+        RelayRouter router = new RelayRouter(RelayStrategy.FAILOVER, List.of(primary, relay("secondary", 1, succeeding())));
+
+        assertThat(router.send(new MailMessage()).toCompletableFuture().join().getMessageID()).isEqualTo("secondary");
+        assertThat(attempts).containsExactly("secondary");
+    }
+
+    @Test
+    void shouldFailWhenAllRelaysFailed() {
+        RelayRouter router = new RelayRouter(
+            RelayStrategy.FAILOVER,
+            List.of(relay("primary", 1, failing("Connection refused")), relay("secondary", 1, failing("Connection reset")))
+        );
+
+        assertThatThrownBy(() -> router.send(new MailMessage()).toCompletableFuture().join()).hasMessageContaining("Connection reset");
+    }
+
+    @Test
+    void shouldPreferLeastLoadedRelay() {
+        RelayRouter.Relay slow = relay("slow", 1, succeeding());
+        slow.health().tryAcquire();
+        slow.health().success(10_000_000);
+        RelayRouter.Relay fast = relay("fast", 1, succeeding());
+        fast.health().tryAcquire();
+        fast.health().success(1_000_000);
+        RelayRouter.Relay heavy = relay("heavy", 20, succeeding());
+        heavy.health().tryAcquire();
+        heavy.health().success(10_000_000);
+
+        assertThat(new RelayRouter(RelayStrategy.LOAD_BALANCING, List.of(slow, fast, heavy)).order())
+            .extracting(RelayRouter.Relay::key)
+            .containsExactly("heavy", "fast", "slow");
+    }
+
+    @Test
+    void shouldNotCountLocalRejectionAsRelayFailure() {
+        RelayRouter.Relay primary = relay("primary", 1, message -> CompletableFuture.failedFuture(new RejectedExecutionException("full")));
+        RelayRouter router = new RelayRouter(RelayStrategy.FAILOVER, List.of(primary, relay("secondary", 1, succeeding())));
+
+        assertThat(router.send(new MailMessage()).toCompletableFuture().join().getMessageID()).isEqualTo("secondary");
+        assertThat(primary.health().isOpen()).isFalse();
+        assertThat(primary.health().inFlight()).isZero();
+    }
+
+    @Test
+    void shouldMeasureLatencyFromSendStart() {
+        RelayRouter.Relay queued = new RelayRouter.Relay(
+            "queued",
+            1,
+            new RelayHealth(new RelayHealth.Options(1, 1000), clock::get),
+            (message, started) -> {
+                // Waiting for the limits of the relay
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(50));
+                started.run();
+                return CompletableFuture.completedFuture(new MailResult());
+            }
+        );
+
+        new RelayRouter(RelayStrategy.FAILOVER, List.of(queued)).send(new MailMessage()).toCompletableFuture().join();
+
+        assertThat(queued.health().latencyEwma()).isLessThan(TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    private RelayRouter.Relay relay(final String key, final int weight, final MailSender sender) {
+        return new RelayRouter.Relay(
+            key,
+            weight,
+            new RelayHealth(new RelayHealth.Options(1, 1000), clock::get),
+            (message, started) -> {
+                attempts.add(key);
+                started.run();
+                return sender.send(message);
+            }
+        );
+    }
+
+    private MailSender succeeding() {
+        return message -> CompletableFuture.completedFuture(new MailResult().setMessageID(attempts.get(attempts.size() - 1)));
+    }
+
+    private static MailSender failing(final String error) {
+        return message -> CompletableFuture.failedFuture(new IllegalStateException(error));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class DataUriCacheTest {
+
+    private static final String PIXEL = "data:image/png;base64,AQID";
+
+    @Test
+    void shouldDecodeImageOnlyOnce() {
+        DataUriCache cache = new DataUriCache(1024);
+
+        DataUriCache.Image first = cache.get(PIXEL);
+        DataUriCache.Image second = cache.get(PIXEL);
+
+        assertThat(second).isSameAs(first);
+        assertThat(first.contentType()).isEqualTo("image/png");
+        assertThat(first.buffer().getBytes()).containsExactly(1, 2, 3);
+        assertThat(cache.misses()).isEqualTo(1);
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldKeyImagesByDigest() {
+        DataUriCache cache = new DataUriCache(1024);
+
+        assertThat(cache.get(PIXEL).digest()).isEqualTo(cache.get(new String(PIXEL.toCharArray())).digest());
+        assertThat(cache.get("data:image/gif;base64,AQID").digest()).isNotEqualTo(cache.get(PIXEL).digest());
+    }
+
+    @Test
+    void shouldEvictImagesWhenBudgetIsExceeded() {
+        DataUriCache cache = new DataUriCache(4);
+
+        cache.get(PIXEL);
+        cache.get("data:image/png;base64,BAUG");
+
+        assertThat(cache.evictions()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldRejectInvalidData() {
+        assertThatThrownBy(() -> new DataUriCache(1024).get("data:image/png;base64,%%%")).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void shouldParseMediaTypeAndParameters() {
+        DataUriCache.Image image = new DataUriCache(1024).get("data:image/SVG+xml;charset=utf-8;base64,AQID");
+
+        assertThat(image.contentType()).isEqualTo("image/svg+xml");
+        assertThat(image.buffer().getBytes()).containsExactly(1, 2, 3);
+    }
+
+    @Test
+    void shouldRejectNonBase64Data() {
+        assertThatThrownBy(() -> new DataUriCache(1024).get("data:image/svg+xml,<svg/>")).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.resource;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.vertx.ext.mail.MailAttachment;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author GraviteeSource Team
+ */
+class ResourceCacheTest {
+
+    @TempDir
+    Path templates;
+
+    @Test
+    void shouldLoadResourceOnlyOnce() throws IOException {
+        Path logo = Files.write(templates.resolve("logo.png"), new byte[] { 1, 2, 3 });
+        ResourceCache cache = new ResourceCache(1024);
+
+        ResourceCache.Resource first = cache.get(logo);
+        ResourceCache.Resource second = cache.get(logo);
+
+        assertThat(first.contentType()).isEqualTo("image/png");
+        assertThat(second.data().getBytes()).containsExactly(1, 2, 3);
+        assertThat(cache.misses()).isEqualTo(1);
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(3);
+    }
+
+    @Test
+    void shouldReloadModifiedResource() throws IOException {
+        Path logo = Files.write(templates.resolve("logo.png"), new byte[] { 1, 2, 3 });
+        ResourceCache cache = new ResourceCache(1024);
+        cache.get(logo);
+
+        Files.write(logo, new byte[] { 4, 5 });
+        Files.setLastModifiedTime(logo, FileTime.fromMillis(Files.getLastModifiedTime(logo).toMillis() + 1000));
+
+        assertThat(cache.get(logo).data().getBytes()).containsExactly(4, 5);
+        assertThat(cache.misses()).isEqualTo(2);
+        assertThat(cache.size()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldEvictResourcesWhenBudgetIsExceeded() throws IOException {
+        Path first = Files.write(templates.resolve("first.png"), new byte[6]);
+        Path second = Files.write(templates.resolve("second.png"), new byte[6]);
+        ResourceCache cache = new ResourceCache(10);
+
+        cache.get(first);
+        cache.get(second);
+
+        assertThat(cache.evictions()).isEqualTo(1);
+        assertThat(cache.size()).isEqualTo(6);
+    }
+
+    @Test
+    void shouldNotCacheResourceLargerThanBudget() throws IOException {
+        Path banner = Files.write(templates.resolve("banner.png"), new byte[16]);
+        ResourceCache cache = new ResourceCache(10);
+
+        assertThat(cache.get(banner).size()).isEqualTo(16);
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void shouldShareResourceBetweenInlineAttachments() throws IOException {
+        Path logo = Files.write(templates.resolve("logo.png"), new byte[] { 1, 2, 3 });
+        ResourceCache.Resource resource = new ResourceCache(1024).get(logo);
+
+        MailAttachment first = resource.inlineAttachment("first");
+        MailAttachment second = resource.inlineAttachment("second");
+
+        assertThat(first.getContentId()).isEqualTo("<first>");
+        assertThat(second.getContentId()).isEqualTo("<second>");
+        assertThat(second.getDisposition()).isEqualTo("inline");
+        assertThat(second.getContentType()).isEqualTo("image/png");
+        assertThat(second.getData().getBytes()).containsExactly(1, 2, 3);
+        assertThat(resource.size()).isEqualTo(3);
+    }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.gravitee.notifier.api.Notification;
+import io.gravitee.notifier.email.DeliveryResult;
+import io.gravitee.notifier.email.NotificationRequest;
+import io.vertx.core.Context;
+import io.vertx.core.Handler;
+import io.vertx.core.Vertx;
+import io.vertx.core.streams.ReadStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class NotificationStreamTest {
+
+    private Vertx vertx;
+
+    private Context context;
+
+    private final List<CompletableFuture<Void>> sends = new CopyOnWriteArrayList<>();
+
+    private final List<DeliveryResult> results = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        vertx = Vertx.vertx();
+        context = vertx.getOrCreateContext();
+    }
+
+    @AfterEach
+    void tearDown() {
+        vertx.close();
+    }
+
+    @Test
+    void shouldLimitNotificationsInFlight() throws Exception {
+        NotificationStream stream = stream(new ListSource(10), 3);
+        stream.handler(results::add);
+
+        await(() -> sends.size() == 3);
+        Thread.sleep(50);
+        assertThat(sends).hasSize(3);
+
+        sends.get(0).complete(null);
+
+        await(() -> sends.size() == 4);
+        assertThat(results).hasSize(1);
+        assertThat(results.get(0).succeeded()).isTrue();
+    }
+
+    @Test
+    void shouldNotFetchNotificationsWhileResultsAreNotConsumed() throws Exception {
+        NotificationStream stream = stream(new ListSource(10), 2);
+        stream.pause();
+        stream.handler(results::add);
+
+        await(() -> sends.size() == 2);
+        sends.forEach(send -> send.complete(null));
+        Thread.sleep(50);
+        assertThat(sends).hasSize(2);
+        assertThat(results).isEmpty();
+
+        stream.fetch(1);
+
+        await(() -> sends.size() == 3);
+        assertThat(results).hasSize(1);
+    }
+
+    @Test
+    void shouldEndOnceAllNotificationsAreDelivered() throws Exception {
+        CompletableFuture<Void> ended = new CompletableFuture<>();
+        NotificationStream stream = stream(new ListSource(3), 2);
+        stream.endHandler(ended::complete);
+        stream.handler(results::add);
+
+        await(() -> sends.size() == 2);
+        sends.get(0).complete(null);
+        sends.get(1).completeExceptionally(new IllegalStateException("SMTP endpoint unavailable"));
+        await(() -> sends.size() == 3);
+        assertThat(ended).isNotDone();
+
+        sends.get(2).complete(null);
+
+        ended.get(5, TimeUnit.SECONDS);
+        assertThat(results).hasSize(3);
+        assertThat(results).filteredOn(result -> !result.succeeded()).singleElement().satisfies(result ->
+            assertThat(result.failure()).hasMessage("SMTP endpoint unavailable")
+        );
+    }
+
+    @Test
+    void shouldEndOnceDeliveredWhenSourceFails() throws Exception {
+        CompletableFuture<Void> ended = new CompletableFuture<>();
+        List<Throwable> errors = new CopyOnWriteArrayList<>();
+        ListSource source = new ListSource(10);
+        NotificationStream stream = stream(source, 2);
+        stream.exceptionHandler(errors::add);
+        stream.endHandler(ended::complete);
+        stream.handler(results::add);
+
+        await(() -> sends.size() == 2);
+        context.runOnContext(v -> source.fail(new IllegalStateException("Source unavailable")));
+        await(() -> errors.size() == 1);
+        assertThat(ended).isNotDone();
+
+        sends.forEach(send -> send.complete(null));
+
+        ended.get(5, TimeUnit.SECONDS);
+        assertThat(results).hasSize(2);
+        assertThat(sends).hasSize(2);
+        assertThat(errors).singleElement().satisfies(error -> assertThat(error).hasMessage("Source unavailable"));
+    }
+
+    private NotificationStream stream(final ReadStream<NotificationRequest> source, final int maxInFlight) {
+        return new NotificationStream(
+            context,
+            source,
+            request -> {
+                CompletableFuture<Void> send = new CompletableFuture<>();
+                sends.add(send);
+                return send;
+            },
+            maxInFlight
+        );
+    }
+
+    private static void await(final BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5000;
+        while (!condition.getAsBoolean()) {
+            assertThat(System.currentTimeMillis()).isLessThan(deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    /**
+     * Source emitting its notifications as they are fetched.
+     */
+    private static class ListSource implements ReadStream<NotificationRequest> {
+
+        private final List<NotificationRequest> requests = new ArrayList<>();
+
+        private Handler<NotificationRequest> handler;
+
+        private Handler<Void> endHandler;
+
+        private Handler<Throwable> exceptionHandler;
+
+        private long demand = Long.MAX_VALUE;
+
+        private ListSource(final int size) {
+            for (int i = 0; i < size; i++) {
+                requests.add(new NotificationRequest(new Notification(), Map.of("index", i)));
+            }
+        }
+
+        @Override
+        public ListSource exceptionHandler(final Handler<Throwable> handler) {
+            this.exceptionHandler = handler;
+            return this;
+        }
+
+        @Override
+        public ListSource handler(final Handler<NotificationRequest> handler) {
+            this.handler = handler;
+            emit();
+            return this;
+        }
+
+        @Override
+        public ListSource pause() {
+            demand = 0;
+            return this;
+        }
+
+        @Override
+        public ListSource resume() {
+            return fetch(Long.MAX_VALUE);
+        }
+
+        @Override
+        public ListSource fetch(final long amount) {
+            demand = demand + amount < 0 ? Long.MAX_VALUE : demand + amount;
+            emit();
+            return this;
+        }
+
+        @Override
+        public ListSource endHandler(final Handler<Void> endHandler) {
+            this.endHandler = endHandler;
+            return this;
+        }
+
+        private void fail(final Throwable error) {
+            requests.clear();
+            endHandler = null;
+            exceptionHandler.handle(error);
+        }
+
+        private void emit() {
+            while (handler != null && demand > 0 && !requests.isEmpty()) {
+                demand--;
+                handler.handle(requests.remove(0));
+            }
+            if (handler != null && requests.isEmpty() && endHandler != null) {
+                Handler<Void> end = endHandler;
+                endHandler = null;
+                end.handle(null);
+            }
+        }
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.suppression;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class InMemorySuppressionStoreTest {
+
+    private final AtomicLong clock = new AtomicLong();
+
+    private final InMemorySuppressionStore store = new InMemorySuppressionStore(clock::get);
+
+    @Test
+    void shouldSuppressFingerprintWithinWindow() {
+        assertThat(record("alert")).isTrue();
+        assertThat(record("alert")).isFalse();
+        assertThat(record("other")).isTrue();
+    }
+
+    @Test
+    void shouldRecordFingerprintAgainOnceExpired() {
+        assertThat(record("alert")).isTrue();
+
+        clock.addAndGet(Duration.ofMinutes(5).toNanos());
+
+        assertThat(record("alert")).isTrue();
+        assertThat(record("alert")).isFalse();
+    }
+
+    @Test
+    void shouldRecordForgottenFingerprintAgain() {
+        assertThat(record("alert")).isTrue();
+
+        store.forget("alert").toCompletableFuture().join();
+
+        assertThat(record("alert")).isTrue();
+        assertThat(record("alert")).isFalse();
+    }
+
+    @Test
+    void shouldPurgeExpiredFingerprints() {
+        for (int i = 0; i < 1023; i++) {
+            record("alert-" + i);
+        }
+        clock.addAndGet(Duration.ofMinutes(5).toNanos());
+
+        record("last");
+
+        assertThat(store.size()).isEqualTo(1);
+    }
+
+    private boolean record(final String fingerprint) {
+        return store.tryRecord(fingerprint, Duration.ofMinutes(5)).toCompletableFuture().join();
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.suppression;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Stand-in for a distributed {@link SuppressionStore}: a store shared by several notifiers playing the nodes of a
+ * cluster, answering asynchronously like a remote store would.
+ *
+ * @author GraviteeSource Team
+ */
+public class SharedSuppressionStore implements SuppressionStore {
+
+    private final Map<String, Long> expirations = new ConcurrentHashMap<>();
+
+    @Override
+    public CompletionStage<Boolean> tryRecord(final String fingerprint, final Duration window) {
+        return CompletableFuture.supplyAsync(() -> {
+            final long now = System.currentTimeMillis();
+            final Long previous = expirations.putIfAbsent(fingerprint, now + window.toMillis());
+            if (previous == null) {
+                return true;
+            }
+            return previous <= now && expirations.replace(fingerprint, previous, now + window.toMillis());
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> forget(final String fingerprint) {
+        return CompletableFuture.runAsync(() -> expirations.remove(fingerprint));
+    }
+
+    public int size() {
+        return expirations.size();
+    }
+}
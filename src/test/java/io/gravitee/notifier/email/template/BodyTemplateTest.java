@@ -0,0 +1,109 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import freemarker.template.Configuration;
+import freemarker.template.Template;
+import java.io.StringWriter;
+import java.util.Map;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class BodyTemplateTest {
+
+    private final Configuration configuration = new Configuration(Configuration.VERSION_2_3_32);
+
+    @Test
+    void shouldRenderSlotsOnly() throws Exception {
+        BodyTemplate template = BodyTemplate.compile("<p>API ${api} is ${status?lower_case}</p>", configuration);
+
+        BodyTemplate.Rendered rendered = template.render(Map.of("api", "echo", "status", "DOWN"));
+
+        assertThat(rendered.values()).containsExactly("echo", "down");
+        assertThat(rendered.write(src -> src)).isEqualTo("<p>API echo is down</p>");
+        assertThat(rendered.html()).isEqualTo("<p>API echo is down</p>");
+    }
+
+    @Test
+    void shouldRenderLikeWholeTemplate() throws Exception {
+        String source = "<div>${'}'}${api!\"{none}\"}</div><br>${ {\"a\": 1}.a }";
+        Map<String, Object> model = Map.of("api", "echo");
+
+        StringWriter expected = new StringWriter();
+        new Template("whole", source, configuration).process(model, expected);
+
+        assertThat(BodyTemplate.compile(source, configuration).render(model).html()).isEqualTo(expected.toString());
+    }
+
+    @Test
+    void shouldRewriteStaticImages() throws Exception {
+        BodyTemplate template = BodyTemplate.compile(
+            "<img src=logo.png><!-- <img src=\"old.png\"> --><img src=\"http://host/logo.png\">${api}",
+            configuration
+        );
+        BodyTemplate.Rendered rendered = template.render(Map.of("api", "echo"));
+
+        assertThat(rendered.write(src -> "cid:" + src)).isEqualTo(
+            "<img src=\"cid:logo.png\"><!-- <img src=\"old.png\"> --><img src=\"http://host/logo.png\">echo"
+        );
+        assertThat(rendered.html()).isEqualTo("<img src=logo.png><!-- <img src=\"old.png\"> --><img src=\"http://host/logo.png\">echo");
+    }
+
+    @Test
+    void shouldCompareRenderedBodiesWithoutConcatenatingThem() throws Exception {
+        BodyTemplate template = BodyTemplate.compile("<p>${api}</p>", configuration);
+
+        assertThat(template.render(Map.of("api", "echo"))).isEqualTo(template.render(Map.of("api", "echo")));
+        assertThat(template.render(Map.of("api", "echo"))).isNotEqualTo(template.render(Map.of("api", "whoami")));
+    }
+
+    @Test
+    void shouldNotCompileDirectives() throws Exception {
+        assertThat(BodyTemplate.compile("<#if api??>${api}</#if>", configuration)).isNull();
+        assertThat(BodyTemplate.compile("<@macro/>", configuration)).isNull();
+        assertThat(BodyTemplate.compile("#{count}", configuration)).isNull();
+        assertThat(BodyTemplate.compile("${api", configuration)).isNull();
+    }
+
+    @Test
+    void shouldNotCompileSlotInImageTag() throws Exception {
+        assertThat(BodyTemplate.compile("<img src=\"${logo}\">", configuration)).isNull();
+        assertThat(BodyTemplate.compile("<IMG ${attributes}>", configuration)).isNull();
+        assertThat(BodyTemplate.compile("<img src=\"logo.png\" alt=\"${api}\">", configuration)).isNull();
+    }
+
+    @Test
+    void shouldNotRenderSlotOutputtingMarkup() throws Exception {
+        BodyTemplate template = BodyTemplate.compile("<div>${content}</div>", configuration);
+
+        assertThat(template.render(Map.of("content", "<img src=\"logo.png\">"))).isNull();
+        assertThat(template.render(Map.of("content", "<!--"))).isNull();
+        assertThat(template.render(Map.of("content", "<b>bold</b>"))).isNotNull();
+    }
+
+    @Test
+    void shouldNotRenderSlotFormingMarkupWithStaticSegments() throws Exception {
+        BodyTemplate template = BodyTemplate.compile("<div>${open}img src=\"logo.png\"> ${first}${second} is up</div>", configuration);
+
+        assertThat(template.render(Map.of("open", "<", "first", "a", "second", "b"))).isNull();
+        assertThat(template.render(Map.of("open", "x", "first", "<!", "second", "--"))).isNull();
+        assertThat(template.render(Map.of("open", "x", "first", "a", "second", "b"))).isNotNull();
+    }
+}
@@ -0,0 +1,77 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class PooledWriterTest {
+
+    @Test
+    void shouldReuseWriterOfThread() throws IOException {
+        PooledWriter first;
+        try (PooledWriter writer = PooledWriter.acquire()) {
+            writer.write("Hello ");
+            writer.append("John");
+            assertThat(writer.toString()).isEqualTo("Hello John");
+            first = writer;
+        }
+
+        try (PooledWriter writer = PooledWriter.acquire()) {
+            assertThat(writer).isSameAs(first);
+            assertThat(writer.length()).isZero();
+        }
+    }
+
+    @Test
+    void shouldNotShareWriterInUse() throws IOException {
+        try (PooledWriter writer = PooledWriter.acquire(); PooledWriter nested = PooledWriter.acquire()) {
+            writer.write("outer");
+            nested.write("inner");
+
+            assertThat(nested).isNotSameAs(writer);
+            assertThat(writer.toString()).isEqualTo("outer");
+        }
+    }
+
+    @Test
+    void shouldFindCharacters() throws IOException {
+        try (PooledWriter writer = PooledWriter.acquire()) {
+            writer.write("a,b");
+
+            assertThat(writer.indexOf(',', 0)).isEqualTo(1);
+            assertThat(writer.indexOf(',', 2)).isEqualTo(-1);
+            assertThat(writer.substring(2, 3)).isEqualTo("b");
+        }
+    }
+
+    @Test
+    void shouldNotRetainLargeBuffer() throws IOException {
+        try (PooledWriter writer = PooledWriter.acquire()) {
+            writer.write("x".repeat(PooledWriter.MAX_RETAINED_CAPACITY + 1));
+        }
+
+        try (PooledWriter writer = PooledWriter.acquire()) {
+            writer.write("small");
+            assertThat(writer.toString()).isEqualTo("small");
+        }
+    }
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import freemarker.template.Configuration;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class TemplateCacheTest {
+
+    private TemplateCache templateCache;
+
+    @BeforeEach
+    void setUp() {
+        templateCache = new TemplateCache(new Configuration(Configuration.VERSION_2_3_32), 2);
+    }
+
+    @Test
+    void shouldRenderTemplate() throws Exception {
+        assertThat(templateCache.render("Hello ${name}", Map.of("name", "John"))).isEqualTo("Hello John");
+    }
+
+    @Test
+    void shouldRenderNullTemplate() throws Exception {
+        assertThat(templateCache.render(null, Map.of())).isNull();
+    }
+
+    @Test
+    void shouldCompileTemplateOnlyOnce() throws Exception {
+        templateCache.render("Hello ${name}", Map.of("name", "John"));
+        templateCache.render("Hello ${name}", Map.of("name", "Jane"));
+
+        assertThat(templateCache.misses()).isEqualTo(1);
+        assertThat(templateCache.hits()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldEvictLeastRecentlyUsedTemplate() throws Exception {
+        templateCache.render("first", Map.of());
+        templateCache.render("second", Map.of());
+        templateCache.render("first", Map.of());
+        templateCache.render("third", Map.of());
+
+        assertThat(templateCache.size()).isEqualTo(2);
+
+        templateCache.render("first", Map.of());
+        assertThat(templateCache.hits()).isEqualTo(2);
+
+        templateCache.render("second", Map.of());
+        assertThat(templateCache.misses()).isEqualTo(4);
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.template;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import freemarker.cache.FileTemplateLoader;
+import freemarker.cache.MruCacheStorage;
+import freemarker.template.Configuration;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+/**
+ * @author GraviteeSource Team
+ */
+class TemplateDirectoryTest {
+
+    @TempDir
+    Path templates;
+
+    private Configuration configuration;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        configuration = new Configuration(Configuration.VERSION_2_3_32);
+        configuration.setTemplateLoader(new FileTemplateLoader(templates.toFile()));
+        configuration.setCacheStorage(new MruCacheStorage(10, 10));
+        configuration.setTemplateUpdateDelayMilliseconds(Long.MAX_VALUE);
+    }
+
+    @Test
+    void shouldPreloadTemplatesOnly() throws IOException {
+        Files.writeString(templates.resolve("first.html"), "first");
+        Files.createDirectories(templates.resolve("partials"));
+        Files.writeString(templates.resolve("partials/second.ftl"), "second");
+        Files.write(templates.resolve("logo.png"), new byte[] { 1, 2, 3 });
+
+        assertThat(TemplateDirectory.preload(configuration, templates, 10)).isEqualTo(2);
+        assertThat(configuration.getCacheStorage()).isInstanceOfSatisfying(
+            MruCacheStorage.class,
+            storage -> assertThat(storage.getSize()).isEqualTo(2)
+        );
+    }
+
+    @Test
+    void shouldSkipInvalidTemplates() throws IOException {
+        Files.writeString(templates.resolve("valid.html"), "${name}");
+        Files.writeString(templates.resolve("invalid.html"), "<#if>");
+
+        assertThat(TemplateDirectory.preload(configuration, templates, 10)).isEqualTo(1);
+    }
+
+    @Test
+    void shouldNotPreloadMissingDirectory() throws IOException {
+        assertThat(TemplateDirectory.preload(configuration, templates.resolve("missing"), 10)).isZero();
+    }
+
+    @Test
+    void shouldInvalidateModifiedTemplate() throws Exception {
+        Path template = Files.writeString(templates.resolve("template.html"), "before");
+        TemplateDirectory.Watch watch = TemplateDirectory.watch(configuration, templates);
+        try {
+            assertThat(render("template.html")).isEqualTo("before");
+
+            Files.writeString(template, "after");
+
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (!"after".equals(render("template.html")) && System.currentTimeMillis() < deadline) {
+                Thread.sleep(50);
+            }
+            assertThat(render("template.html")).isEqualTo("after");
+        } finally {
+            watch.release();
+        }
+    }
+
+    @Test
+    void shouldNotWatchMissingDirectory() throws IOException {
+        assertThat(TemplateDirectory.watch(configuration, templates.resolve("missing"))).isNull();
+    }
+
+    @Test
+    void shouldStopWatcherOnceReleased() throws Exception {
+        long watchers = watcherThreads();
+        TemplateDirectory.Watch first = TemplateDirectory.watch(configuration, templates);
+        TemplateDirectory.Watch second = TemplateDirectory.watch(new Configuration(Configuration.VERSION_2_3_32), templates);
+        assertThat(watcherThreads()).isEqualTo(watchers + 1);
+
+        first.release();
+        first.release();
+        assertThat(watcherThreads()).isEqualTo(watchers + 1);
+
+        second.release();
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (watcherThreads() > watchers && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        assertThat(watcherThreads()).isEqualTo(watchers);
+    }
+
+    private static long watcherThreads() {
+        return Thread.getAllStackTraces()
+            .keySet()
+            .stream()
+            .filter(thread -> thread.getName().equals("gio-email-notifier-templates-watcher"))
+            .count();
+    }
+
+    private String render(final String name) throws Exception {
+        StringWriter writer = new StringWriter();
+        configuration.getTemplate(name).process(Map.of(), writer);
+        return writer.toString();
+    }
+}
@@ -0,0 +1,220 @@
+/*
+ * Copyright © 2015 The Gravitee team (http://gravitee.io)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package io.gravitee.notifier.email.throttling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import io.gravitee.notifier.email.configuration.NotificationPriority;
+import io.gravitee.notifier.email.configuration.QueueOverflowPolicy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.jupiter.api.Test;
+
+/**
+ * @author GraviteeSource Team
+ */
+class SendLimiterTest {
+
+    @Test
+    void shouldLimitConcurrentSends() {
+        SendLimiter limiter = new SendLimiter(new SendLimiter.Options(0, 1, 10, QueueOverflowPolicy.REJECT));
+        CompletableFuture<String> firstSend = new CompletableFuture<>();
+        CompletableFuture<String> secondSend = new CompletableFuture<>();
+
+        CompletableFuture<String> first = limiter.submit(() -> firstSend);
+        CompletableFuture<String> second = limiter.submit(() -> secondSend);
+
+        assertThat(limiter.inFlight()).isEqualTo(1);
+        assertThat(limiter.queued()).isEqualTo(1);
+
+        firstSend.complete("first");
+        assertThat(first).isCompletedWithValue("first");
+        assertThat(limiter.queued()).isZero();
+
+        secondSend.complete("second");
+        assertThat(second).isCompletedWithValue("second");
+        assertThat(limiter.inFlight()).isZero();
+    }
+
+    @Test
+    void shouldRejectSendWhenQueueIsFull() {
+        SendLimiter limiter = new SendLimiter(new SendLimiter.Options(0, 1, 1, QueueOverflowPolicy.REJECT));
+
+        limiter.submit(CompletableFuture::new);
+        CompletableFuture<Object> queued = limiter.submit(CompletableFuture::new);
+        CompletableFuture<Object> rejected = limiter.submit(CompletableFuture::new);
+
+        assertThat(queued).isNotDone();
+        assertRejected(rejected);
+        assertThat(limiter.rejected()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldDropOldestSendWhenQueueIsFull() {
+        SendLimiter limiter = new SendLimiter(new SendLimiter.Options(0, 1, 1, QueueOverflowPolicy.DROP_OLDEST));
+
+        limiter.submit(CompletableFuture::new);
+        CompletableFuture<Object> dropped = limiter.submit(CompletableFuture::new);
+        CompletableFuture<Object> queued = limiter.submit(CompletableFuture::new);
+
+        assertRejected(dropped);
+        assertThat(queued).isNotDone();
+        assertThat(limiter.queued()).isEqualTo(1);
+    }
+
+    @Test
+    void shouldStartHigherPrioritySendsFirst() {
+        SendLimiter limiter = new SendLimiter(new SendLimiter.Options(0, 1, 10, QueueOverflowPolicy.REJECT));
+        List<String> started = new ArrayList<>();
+        CompletableFuture<String> firstSend = new CompletableFuture<>();
+
+        limiter.submit(NotificationPriority.LOW, () -> firstSend);
+        limiter.submit(NotificationPriority.LOW, () -> started("low", started));
+        limiter.submit(NotificationPriority.NORMAL, () -> started("normal", started));
+        limiter.submit(NotificationPriority.HIGH, () -> started("high", started));
+
+        firstSend.complete("first");
+
+        assertThat(started).containsExactly("high", "normal", "low");
+    }
+
+    @Test
+    void shouldKeepReservedSlotsForHigherPriorities() {
+        SendLimiter limiter = new SendLimiter(
+            new SendLimiter.Options(0, 3, 10, QueueOverflowPolicy.REJECT, new SendLimiter.Lanes(1, 1, 0))
+        );
+
+        limiter.submit(NotificationPriority.LOW, CompletableFuture::new);
+        limiter.submit(NotificationPriority.LOW, CompletableFuture::new);
+        assertThat(limiter.inFlight()).isEqualTo(1);
+
+        limiter.submit(NotificationPriority.NORMAL, CompletableFuture::new);
+        limiter.submit(NotificationPriority.NORMAL, CompletableFuture::new);
+        assertThat(limiter.inFlight()).isEqualTo(2);
+
+        limiter.submit(NotificationPriority.HIGH, CompletableFuture::new);
+        assertThat(limiter.inFlight()).isEqualTo(3);
+        assertThat(limiter.queued()).isEqualTo(2);
+    }
+
+    @Test
+    void shouldDropLowerPrioritySendWhenQueueIsFull() {
+        SendLimiter limiter = new SendLimiter(new SendLimiter.Options(0, 1, 1, QueueOverflowPolicy.REJECT));
+
+        limiter.submit(NotificationPriority.LOW, CompletableFuture::new);
+        CompletableFuture<Object> dropped = limiter.submit(NotificationPriority.LOW, CompletableFuture::new);
+        CompletableFuture<Object> queued = limiter.submit(NotificationPriority.HIGH, CompletableFuture::new);
+        CompletableFuture<Object> rejected = limiter.submit(NotificationPriority.NORMAL, CompletableFuture::new);
+
+        assertRejected(dropped);
+        assertThat(queued).isNotDone();
+        assertRejected(rejected);
+    }
+
+    @Test
+    void shouldNotStarveLowerPrioritySends() throws InterruptedException {
+        SendLimiter limiter = new SendLimiter(
+            new SendLimiter.Options(0, 1, 10, QueueOverflowPolicy.REJECT, new SendLimiter.Lanes(0, 0, 1_000_000))
+        );
+        List<String> started = new ArrayList<>();
+        CompletableFuture<String> firstSend = new CompletableFuture<>();
+
+        limiter.submit(NotificationPriority.HIGH, () -> firstSend);
+        limiter.submit(NotificationPriority.LOW, () -> started("low", started));
+        limiter.submit(NotificationPriority.HIGH, () -> started("high", started));
+        Thread.sleep(5);
+
+        firstSend.complete("first");
+
+        assertThat(started).containsExactly("low", "high");
+    }
+
+    @Test
+    void shouldShareLimiterOfEndpoint() {
+        SendLimiter.Options options = new SendLimiter.Options(10, 1, 10, QueueOverflowPolicy.REJECT);
+
+        assertThat(SendLimiter.of("localhost:25:user", options)).isSameAs(SendLimiter.of("localhost:25:user", options));
+        assertThat(SendLimiter.of("localhost:25:user", options)).isNotSameAs(SendLimiter.of("localhost:587:user", options));
+    }
+
+    @Test
+    void shouldKeepLimiterOfEachLimits() {
+        SendLimiter.Options options = new SendLimiter.Options(10, 1, 10, QueueOverflowPolicy.REJECT);
+        SendLimiter.Options otherOptions = new SendLimiter.Options(5, 2, 10, QueueOverflowPolicy.REJECT);
+
+        SendLimiter limiter = SendLimiter.of("localhost:26:user", options);
+        SendLimiter otherLimiter = SendLimiter.of("localhost:26:user", otherOptions);
+
+        assertThat(otherLimiter).isNotSameAs(limiter);
+        assertThat(SendLimiter.of("localhost:26:user", options)).isSameAs(limiter);
+        assertThat(SendLimiter.of("localhost:26:user", otherOptions)).isSameAs(otherLimiter);
+    }
+
+    @Test
+    void shouldForgetLimiterReleasedByItsLastUser() {
+        SendLimiter.Options options = new SendLimiter.Options(10, 1, 10, QueueOverflowPolicy.REJECT);
+
+        SendLimiter limiter = SendLimiter.of("localhost:27:user", options);
+        SendLimiter.of("localhost:27:user", options).release();
+
+        assertThat(SendLimiter.of("localhost:27:user", options)).isSameAs(limiter);
+
+        limiter.release();
+        limiter.release();
+
+        assertThat(SendLimiter.of("localhost:27:user", options)).isNotSameAs(limiter);
+    }
+
+    @Test
+    void shouldNotifyCreationOfLimiterOnce() {
+        SendLimiter.Options options = new SendLimiter.Options(10, 1, 10, QueueOverflowPolicy.REJECT);
+        List<SendLimiter> created = new ArrayList<>();
+
+        SendLimiter limiter = SendLimiter.of("localhost:28:user", options, created::add);
+        SendLimiter.of("localhost:28:user", options, created::add);
+
+        assertThat(created).containsExactly(limiter);
+    }
+
+    @Test
+    void shouldLimitRateWithTokenBucket() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket tokenBucket = new TokenBucket(2, 2, clock::get);
+
+        assertThat(tokenBucket.tryConsume()).isTrue();
+        assertThat(tokenBucket.tryConsume()).isTrue();
+        assertThat(tokenBucket.tryConsume()).isFalse();
+        assertThat(tokenBucket.nanosToNextToken()).isEqualTo(500_000_000L);
+
+        clock.addAndGet(500_000_000L);
+        assertThat(tokenBucket.tryConsume()).isTrue();
+        assertThat(tokenBucket.tryConsume()).isFalse();
+    }
+
+    private static CompletableFuture<String> started(final String name, final List<String> started) {
+        started.add(name);
+        return CompletableFuture.completedFuture(name);
+    }
+
+        private static void assertRejected(CompletableFuture<?> future) {
+        assertThatThrownBy(future::join).isInstanceOf(CompletionException.class).hasCauseInstanceOf(RejectedExecutionException.class);
+    }
+}